@@ -85,8 +85,7 @@ public abstract class AbstractMarshaller extends AbstractObjectOutput implements
 
     /** {@inheritDoc} */
     public void start(final ByteOutput byteOutput) throws IOException {
-        this.byteOutput = byteOutput;
-        buffer = new byte[bufferSize];
+        super.start(byteOutput);
         streamHeader.writeHeader(this);
     }
 
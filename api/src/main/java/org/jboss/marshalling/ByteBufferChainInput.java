@@ -0,0 +1,155 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.marshalling;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An {@code InputStream} which implements {@code ByteInput} and reads bytes from a sequence of {@code ByteBuffer}s,
+ * as produced for example by a scattering read or by {@link ByteBufferChainOutput#take()}.  No intermediate copy of
+ * the buffers is made.  If a {@link ByteBufferPool} is given, each buffer is returned to it as soon as it has been
+ * fully consumed, and any remaining buffers are returned when this input is closed.
+ * <p>
+ * Instances of this class are not thread-safe.
+ */
+public class ByteBufferChainInput extends InputStream implements ByteInput {
+
+    private final ByteBuffer[] buffers;
+    private final ByteBufferPool pool;
+    private int index;
+
+    /**
+     * Construct a new instance.  The buffers are not returned to any pool.
+     *
+     * @param buffers the buffers to read from, in order
+     */
+    public ByteBufferChainInput(final ByteBuffer[] buffers) {
+        this(buffers, null);
+    }
+
+    /**
+     * Construct a new instance.
+     *
+     * @param buffers the buffers to read from, in order
+     * @param pool the pool to return consumed buffers to, or {@code null} to retain them
+     */
+    public ByteBufferChainInput(final ByteBuffer[] buffers, final ByteBufferPool pool) {
+        if (buffers == null) {
+            throw new IllegalArgumentException("buffers is null");
+        }
+        this.buffers = buffers.clone();
+        this.pool = pool;
+    }
+
+    /**
+     * Get the current buffer, advancing past (and releasing) any exhausted ones.
+     *
+     * @return the current buffer, or {@code null} if all buffers are exhausted
+     */
+    private ByteBuffer current() {
+        final ByteBuffer[] buffers = this.buffers;
+        int index = this.index;
+        while (index < buffers.length) {
+            final ByteBuffer buffer = buffers[index];
+            if (buffer.hasRemaining()) {
+                this.index = index;
+                return buffer;
+            }
+            release(index++);
+        }
+        this.index = index;
+        return null;
+    }
+
+    private void release(final int index) {
+        final ByteBuffer buffer = buffers[index];
+        buffers[index] = null;
+        if (pool != null && buffer != null) {
+            pool.free(buffer);
+        }
+    }
+
+    /** {@inheritDoc} */
+    public int read() throws IOException {
+        final ByteBuffer buffer = current();
+        return buffer == null ? -1 : buffer.get() & 0xff;
+    }
+
+    /** {@inheritDoc} */
+    public int read(final byte[] b) throws IOException {
+        return read(b, 0, b.length);
+    }
+
+    /** {@inheritDoc} */
+    public int read(final byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        int t = 0;
+        ByteBuffer buffer;
+        while (len > 0 && (buffer = current()) != null) {
+            final int c = Math.min(len, buffer.remaining());
+            buffer.get(b, off, c);
+            off += c;
+            len -= c;
+            t += c;
+        }
+        return t == 0 ? -1 : t;
+    }
+
+    /** {@inheritDoc} */
+    public int available() throws IOException {
+        final ByteBuffer[] buffers = this.buffers;
+        long t = 0L;
+        for (int i = index; i < buffers.length && t < Integer.MAX_VALUE; i ++) {
+            final ByteBuffer buffer = buffers[i];
+            if (buffer != null) {
+                t += buffer.remaining();
+            }
+        }
+        return (int) Math.min((long) Integer.MAX_VALUE, t);
+    }
+
+    /** {@inheritDoc} */
+    public long skip(long n) throws IOException {
+        long t = 0L;
+        ByteBuffer buffer;
+        while (n > 0L && (buffer = current()) != null) {
+            final int c = (int) Math.min((long) buffer.remaining(), n);
+            buffer.position(buffer.position() + c);
+            n -= c;
+            t += c;
+        }
+        return t;
+    }
+
+    /**
+     * Close this input.  Any unconsumed buffers are returned to the pool, if one was given.
+     *
+     * @throws IOException never
+     */
+    public void close() throws IOException {
+        final ByteBuffer[] buffers = this.buffers;
+        for (int i = index; i < buffers.length; i ++) {
+            release(i);
+        }
+        index = buffers.length;
+    }
+}
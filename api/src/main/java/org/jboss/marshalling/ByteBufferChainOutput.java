@@ -0,0 +1,168 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.marshalling;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * An {@code OutputStream} implementing {@code ByteOutput} which writes to a growable chain of {@code ByteBuffer}
+ * segments obtained from a {@link ByteBufferPool}.  The written data can be retrieved with {@link #take()} as an
+ * array of buffers suitable for a gathering write, without first copying it into a single array.
+ * <p>
+ * Instances of this class are not thread-safe.
+ */
+public class ByteBufferChainOutput extends OutputStream implements ByteOutput {
+
+    private static final ByteBuffer[] NO_BUFFERS = new ByteBuffer[0];
+
+    private final ByteBufferPool pool;
+    private ByteBuffer[] buffers = new ByteBuffer[8];
+    private int count;
+    private ByteBuffer current;
+    private long size;
+
+    /**
+     * Construct a new instance.
+     *
+     * @param pool the pool from which buffer segments are obtained
+     */
+    public ByteBufferChainOutput(final ByteBufferPool pool) {
+        if (pool == null) {
+            throw new IllegalArgumentException("pool is null");
+        }
+        this.pool = pool;
+    }
+
+    /**
+     * Get the pool from which buffer segments are obtained.
+     *
+     * @return the pool
+     */
+    public ByteBufferPool getPool() {
+        return pool;
+    }
+
+    private ByteBuffer nextBuffer() {
+        final ByteBuffer buffer = pool.allocate();
+        if (buffer.remaining() == 0) {
+            pool.free(buffer);
+            throw new IllegalStateException("Pool returned an empty buffer");
+        }
+        ByteBuffer[] buffers = this.buffers;
+        final int count = this.count;
+        if (count == buffers.length) {
+            this.buffers = buffers = Arrays.copyOf(buffers, count << 1);
+        }
+        buffers[count] = buffer;
+        this.count = count + 1;
+        return current = buffer;
+    }
+
+    /** {@inheritDoc} */
+    public void write(final int b) throws IOException {
+        ByteBuffer current = this.current;
+        if (current == null || ! current.hasRemaining()) {
+            current = nextBuffer();
+        }
+        current.put((byte) b);
+        size++;
+    }
+
+    /** {@inheritDoc} */
+    public void write(final byte[] b) throws IOException {
+        write(b, 0, b.length);
+    }
+
+    /** {@inheritDoc} */
+    public void write(final byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off > b.length - len) {
+            throw new IndexOutOfBoundsException();
+        }
+        ByteBuffer current = this.current;
+        while (len > 0) {
+            if (current == null || ! current.hasRemaining()) {
+                current = nextBuffer();
+            }
+            final int c = Math.min(len, current.remaining());
+            current.put(b, off, c);
+            size += c;
+            off += c;
+            len -= c;
+        }
+    }
+
+    /**
+     * Get the number of bytes written since this output was created or last taken or discarded.
+     *
+     * @return the number of bytes
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Take the written data as an array of buffers which are ready to be read (for example, by a
+     * {@link java.nio.channels.GatheringByteChannel}).  Ownership of the buffers passes to the caller, who should
+     * return them to the pool once they have been consumed.  This output is reset and may be used to write a new
+     * message.
+     *
+     * @return the buffers, possibly empty
+     */
+    public ByteBuffer[] take() {
+        final int count = this.count;
+        if (count == 0) {
+            return NO_BUFFERS;
+        }
+        final ByteBuffer[] buffers = this.buffers;
+        final ByteBuffer[] result = Arrays.copyOf(buffers, count);
+        for (ByteBuffer buffer : result) {
+            buffer.flip();
+        }
+        Arrays.fill(buffers, 0, count, null);
+        this.count = 0;
+        current = null;
+        size = 0L;
+        return result;
+    }
+
+    /**
+     * Discard any written data, returning all held buffers to the pool.
+     */
+    public void discard() {
+        final ByteBuffer[] buffers = this.buffers;
+        final int count = this.count;
+        for (int i = 0; i < count; i ++) {
+            pool.free(buffers[i]);
+            buffers[i] = null;
+        }
+        this.count = 0;
+        current = null;
+        size = 0L;
+    }
+
+    /** {@inheritDoc} */
+    public void flush() throws IOException {
+    }
+
+    /** {@inheritDoc} */
+    public void close() throws IOException {
+    }
+}
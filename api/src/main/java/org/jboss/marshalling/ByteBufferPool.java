@@ -0,0 +1,42 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.marshalling;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A source of reusable {@code ByteBuffer} segments.  Buffers obtained from a pool should be returned to the same pool
+ * when they are no longer in use.
+ */
+public interface ByteBufferPool {
+
+    /**
+     * Get a buffer from the pool.  The returned buffer is cleared (its position is zero and its limit is equal to its
+     * capacity).
+     *
+     * @return the buffer
+     */
+    ByteBuffer allocate();
+
+    /**
+     * Return a buffer to the pool.  The caller must not access the buffer after this method is called.
+     *
+     * @param buffer the buffer to return
+     */
+    void free(ByteBuffer buffer);
+}
@@ -19,30 +19,62 @@
 package org.jboss.marshalling;
 
 import java.io.IOException;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * A paired {@link ByteInput} and {@link ByteOutput}.  Each end must be used from a different thread, otherwise a deadlock
  * condition will occur.
+ * <p>
+ * The pipe is backed by a single-producer, single-consumer lock-free ring buffer.  A blocked reader or writer spins
+ * briefly before parking until the other side makes progress.  Closing the output causes the input to report end of
+ * stream once all written bytes are consumed; closing the input causes further writes to fail.
  */
 public final class BytePipe {
-    private final ByteInput input;
-    private final ByteOutput output;
 
     /**
-     * Construct a new instance.
+     * The default ring buffer capacity.
+     */
+    public static final int DEFAULT_CAPACITY = 65536;
+
+    private static final int SPIN_COUNT = 128;
+
+    private final byte[] ring;
+    private final int mask;
+
+    // read index, only advanced by the consumer
+    private volatile long head;
+    // write index, only advanced by the producer
+    private volatile long tail;
+    private volatile boolean inputClosed;
+    private volatile boolean outputClosed;
+    private volatile Thread waitingReader;
+    private volatile Thread waitingWriter;
+
+    private final Input input = new Input();
+    private final Output output = new Output();
+
+    /**
+     * Construct a new instance with the default capacity.
      */
     public BytePipe() {
-        final PipedOutputStream output = new PipedOutputStream();
-        final PipedInputStream input;
-        try {
-            input = new PipedInputStream(output);
-        } catch (IOException e) {
-            throw new IllegalStateException(e);
-        }
-        this.input = Marshalling.createByteInput(input);
-        this.output = Marshalling.createByteOutput(output);
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Construct a new instance.
+     *
+     * @param capacity the ring buffer capacity in bytes; rounded up to the next power of two
+     */
+    public BytePipe(final int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        }
+        final int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        ring = new byte[size];
+        mask = size - 1;
     }
 
     /**
@@ -62,4 +94,193 @@ public final class BytePipe {
     public ByteOutput getOutput() {
         return output;
     }
+
+    /**
+     * Get the ring buffer capacity of this pipe.
+     *
+     * @return the capacity in bytes
+     */
+    public int getCapacity() {
+        return ring.length;
+    }
+
+    private static void unpark(final Thread thread) {
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    final class Input extends InputStream implements ByteInput {
+
+        Input() {
+        }
+
+        // returns the number of readable bytes, or 0 if the output is closed and drained
+        private int awaitReadable() throws IOException {
+            int spins = 0;
+            for (;;) {
+                if (inputClosed) {
+                    throw new IOException("Pipe closed");
+                }
+                final long head = BytePipe.this.head;
+                if (tail != head) {
+                    return (int) (tail - head);
+                }
+                if (outputClosed) {
+                    // tail is published before the close flag
+                    return (int) (tail - head);
+                }
+                if (spins < SPIN_COUNT) {
+                    spins++;
+                    JDKSpecific.onSpinWait();
+                } else {
+                    waitingReader = Thread.currentThread();
+                    if (tail == head && ! outputClosed && ! inputClosed) {
+                        LockSupport.park(BytePipe.this);
+                    }
+                    waitingReader = null;
+                    if (Thread.interrupted()) {
+                        throw new InterruptedIOException();
+                    }
+                }
+            }
+        }
+
+        private void consumed(final int cnt) {
+            head += cnt;
+            unpark(waitingWriter);
+        }
+
+        public int read() throws IOException {
+            if (awaitReadable() == 0) {
+                return -1;
+            }
+            final int b = ring[(int) head & mask] & 0xff;
+            consumed(1);
+            return b;
+        }
+
+        public int read(final byte[] b) throws IOException {
+            return read(b, 0, b.length);
+        }
+
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            final int avail = awaitReadable();
+            if (avail == 0) {
+                return -1;
+            }
+            final int cnt = Math.min(avail, len);
+            final byte[] ring = BytePipe.this.ring;
+            final int idx = (int) head & mask;
+            final int first = Math.min(cnt, ring.length - idx);
+            System.arraycopy(ring, idx, b, off, first);
+            if (first < cnt) {
+                System.arraycopy(ring, 0, b, off + first, cnt - first);
+            }
+            consumed(cnt);
+            return cnt;
+        }
+
+        public long skip(final long n) throws IOException {
+            if (n <= 0L) {
+                return 0L;
+            }
+            final int cnt = (int) Math.min((long) awaitReadable(), n);
+            consumed(cnt);
+            return cnt;
+        }
+
+        public int available() throws IOException {
+            if (inputClosed) {
+                throw new IOException("Pipe closed");
+            }
+            return (int) (tail - head);
+        }
+
+        public void close() throws IOException {
+            inputClosed = true;
+            unpark(waitingWriter);
+        }
+    }
+
+    final class Output extends OutputStream implements ByteOutput {
+
+        Output() {
+        }
+
+        // returns the number of writable bytes, always at least 1
+        private int awaitWritable() throws IOException {
+            final int capacity = ring.length;
+            int spins = 0;
+            for (;;) {
+                if (outputClosed) {
+                    throw new IOException("Stream closed");
+                }
+                if (inputClosed) {
+                    throw new IOException("Pipe closed");
+                }
+                final long tail = BytePipe.this.tail;
+                final int free = capacity - (int) (tail - head);
+                if (free > 0) {
+                    return free;
+                }
+                if (spins < SPIN_COUNT) {
+                    spins++;
+                    JDKSpecific.onSpinWait();
+                } else {
+                    waitingWriter = Thread.currentThread();
+                    if (tail - head == capacity && ! inputClosed) {
+                        LockSupport.park(BytePipe.this);
+                    }
+                    waitingWriter = null;
+                    if (Thread.interrupted()) {
+                        throw new InterruptedIOException();
+                    }
+                }
+            }
+        }
+
+        private void produced(final int cnt) {
+            tail += cnt;
+            unpark(waitingReader);
+        }
+
+        public void write(final int b) throws IOException {
+            awaitWritable();
+            ring[(int) tail & mask] = (byte) b;
+            produced(1);
+        }
+
+        public void write(final byte[] b) throws IOException {
+            write(b, 0, b.length);
+        }
+
+        public void write(final byte[] b, int off, int len) throws IOException {
+            final byte[] ring = BytePipe.this.ring;
+            while (len > 0) {
+                final int cnt = Math.min(awaitWritable(), len);
+                final int idx = (int) tail & mask;
+                final int first = Math.min(cnt, ring.length - idx);
+                System.arraycopy(b, off, ring, idx, first);
+                if (first < cnt) {
+                    System.arraycopy(b, off + first, ring, 0, cnt - first);
+                }
+                produced(cnt);
+                off += cnt;
+                len -= cnt;
+            }
+        }
+
+        public void flush() throws IOException {
+            // written bytes are visible to the reader immediately
+        }
+
+        public void close() throws IOException {
+            outputClosed = true;
+            unpark(waitingReader);
+        }
+    }
 }
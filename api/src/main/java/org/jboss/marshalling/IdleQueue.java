@@ -0,0 +1,77 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.marshalling;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A thread-safe queue of idle pooled objects which holds at most a fixed number of entries.
+ *
+ * @param <T> the pooled object type
+ */
+final class IdleQueue<T> {
+    private final int maxIdle;
+    private final ConcurrentLinkedQueue<T> idle = new ConcurrentLinkedQueue<T>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    IdleQueue(final int maxIdle) {
+        if (maxIdle < 0) {
+            throw new IllegalArgumentException("maxIdle is negative");
+        }
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * Take an idle object from the queue.
+     *
+     * @return the object, or {@code null} if none is idle
+     */
+    T poll() {
+        final T item = idle.poll();
+        if (item != null) {
+            idleCount.decrementAndGet();
+        }
+        return item;
+    }
+
+    /**
+     * Add an idle object to the queue, unless the queue is already full.
+     *
+     * @param item the object
+     * @return {@code true} if the object was queued, {@code false} if it was discarded
+     */
+    boolean offer(final T item) {
+        if (idleCount.incrementAndGet() > maxIdle) {
+            idleCount.decrementAndGet();
+            return false;
+        }
+        idle.offer(item);
+        return true;
+    }
+
+    /**
+     * Get the number of idle objects currently queued.
+     *
+     * @return the number of idle objects
+     */
+    int size() {
+        return idleCount.get();
+    }
+}
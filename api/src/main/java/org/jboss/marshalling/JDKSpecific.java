@@ -56,6 +56,38 @@ final class JDKSpecific {
         return Holder.STACK_TRACE_READER.getClassContext()[3];
     }
 
+    static void onSpinWait() {
+    }
+
+    static void putShort(final byte[] b, final int off, final int v) {
+        b[off]     = (byte) (v >> 8);
+        b[off + 1] = (byte) v;
+    }
+
+    static short getShort(final byte[] b, final int off) {
+        return (short) (b[off] << 8 | (b[off + 1] & 0xff));
+    }
+
+    static void putInt(final byte[] b, final int off, final int v) {
+        b[off]     = (byte) (v >> 24);
+        b[off + 1] = (byte) (v >> 16);
+        b[off + 2] = (byte) (v >> 8);
+        b[off + 3] = (byte) v;
+    }
+
+    static int getInt(final byte[] b, final int off) {
+        return b[off] << 24 | (b[off + 1] & 0xff) << 16 | (b[off + 2] & 0xff) << 8 | (b[off + 3] & 0xff);
+    }
+
+    static void putLong(final byte[] b, final int off, final long v) {
+        putInt(b, off, (int) (v >> 32L));
+        putInt(b, off + 4, (int) v);
+    }
+
+    static long getLong(final byte[] b, final int off) {
+        return (long) getInt(b, off) << 32L | (long) getInt(b, off + 4) & 0xffffffffL;
+    }
+
     static final class OptionalDataExceptionCreateAction implements PrivilegedAction<OptionalDataException> {
 
         static final OptionalDataExceptionCreateAction INSTANCE = new OptionalDataExceptionCreateAction();
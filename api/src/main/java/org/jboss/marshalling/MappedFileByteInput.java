@@ -0,0 +1,161 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.marshalling;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * An {@code InputStream} which implements {@code ByteInput} and reads bytes from a file through a sliding
+ * memory-mapped window.  The window is remapped as reading advances, so files larger than 2GB may be read; skipping
+ * only moves the file position and never copies data.  Closing this input closes the underlying channel.
+ */
+public class MappedFileByteInput extends InputStream implements ByteInput {
+
+    /**
+     * The default mapping window size.
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 64 << 20;
+
+    private final FileChannel channel;
+    private final int windowSize;
+    private final long size;
+    private long position;
+    private MappedByteBuffer window;
+    private long windowStart;
+
+    /**
+     * Construct a new instance, reading from the current channel position using the default window size.
+     *
+     * @param channel the file channel to read from
+     * @throws IOException if the channel position or size cannot be determined
+     */
+    public MappedFileByteInput(final FileChannel channel) throws IOException {
+        this(channel, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Construct a new instance, reading from the current channel position.  The readable range extends to the size
+     * of the file at the time of construction.
+     *
+     * @param channel the file channel to read from
+     * @param windowSize the maximum number of bytes to map at once
+     * @throws IOException if the channel position or size cannot be determined
+     */
+    public MappedFileByteInput(final FileChannel channel, final int windowSize) throws IOException {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("windowSize must be positive");
+        }
+        this.channel = channel;
+        this.windowSize = windowSize;
+        size = channel.size();
+        position = channel.position();
+    }
+
+    /**
+     * Get the current file position of this input.
+     *
+     * @return the position
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    private MappedByteBuffer window() throws IOException {
+        MappedByteBuffer window = this.window;
+        if (window != null && window.hasRemaining()) {
+            return window;
+        }
+        final long position = this.position;
+        if (position >= size) {
+            return null;
+        }
+        this.window = window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min((long) windowSize, size - position));
+        windowStart = position;
+        return window;
+    }
+
+    /** {@inheritDoc} */
+    public int read() throws IOException {
+        final MappedByteBuffer window = window();
+        if (window == null) {
+            return -1;
+        }
+        position++;
+        return window.get() & 0xff;
+    }
+
+    /** {@inheritDoc} */
+    public int read(final byte[] b) throws IOException {
+        return read(b, 0, b.length);
+    }
+
+    /** {@inheritDoc} */
+    public int read(final byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        int t = 0;
+        while (len > 0) {
+            final MappedByteBuffer window = window();
+            if (window == null) {
+                return t == 0 ? -1 : t;
+            }
+            final int c = Math.min(len, window.remaining());
+            window.get(b, off, c);
+            position += c;
+            off += c;
+            len -= c;
+            t += c;
+        }
+        return t;
+    }
+
+    /** {@inheritDoc} */
+    public int available() throws IOException {
+        return (int) Math.min((long) Integer.MAX_VALUE, Math.max(0L, size - position));
+    }
+
+    /** {@inheritDoc} */
+    public long skip(final long n) throws IOException {
+        if (n <= 0L) {
+            return 0L;
+        }
+        final long c = Math.min(n, Math.max(0L, size - position));
+        position += c;
+        final MappedByteBuffer window = this.window;
+        if (window != null) {
+            final long offs = position - windowStart;
+            if (offs <= window.limit()) {
+                window.position((int) offs);
+            } else {
+                this.window = null;
+            }
+        }
+        return c;
+    }
+
+    /** {@inheritDoc} */
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+}
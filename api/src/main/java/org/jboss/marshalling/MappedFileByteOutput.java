@@ -0,0 +1,148 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.marshalling;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * An {@code OutputStream} which implements {@code ByteOutput} and writes bytes to a file through a sliding
+ * memory-mapped window.  The file is extended one window at a time as writing advances, so files larger than 2GB may
+ * be written.  On close, any part of the last window which lies beyond both the written bytes and the original end of
+ * the file is truncated away, so existing content after the write position is kept, and the underlying channel is
+ * closed.  The channel must be opened for both reading and writing.
+ */
+public class MappedFileByteOutput extends OutputStream implements ByteOutput {
+
+    /**
+     * The default mapping window size.
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 64 << 20;
+
+    private final FileChannel channel;
+    private final int windowSize;
+    private final long initialSize;
+    private long position;
+    private MappedByteBuffer window;
+
+    /**
+     * Construct a new instance, writing at the current channel position using the default window size.
+     *
+     * @param channel the file channel to write to
+     * @throws IOException if the channel position cannot be determined
+     */
+    public MappedFileByteOutput(final FileChannel channel) throws IOException {
+        this(channel, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Construct a new instance, writing at the current channel position.
+     *
+     * @param channel the file channel to write to
+     * @param windowSize the number of bytes to map at once
+     * @throws IOException if the channel position cannot be determined
+     */
+    public MappedFileByteOutput(final FileChannel channel, final int windowSize) throws IOException {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("windowSize must be positive");
+        }
+        this.channel = channel;
+        this.windowSize = windowSize;
+        position = channel.position();
+        initialSize = channel.size();
+    }
+
+    /**
+     * Get the current file position of this output.
+     *
+     * @return the position
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    private MappedByteBuffer window() throws IOException {
+        MappedByteBuffer window = this.window;
+        if (window != null) {
+            if (window.hasRemaining()) {
+                return window;
+            }
+            // the channel cannot force mapped changes, so do it before the mapping is dropped
+            window.force();
+        }
+        return this.window = channel.map(FileChannel.MapMode.READ_WRITE, position, windowSize);
+    }
+
+    /** {@inheritDoc} */
+    public void write(final int b) throws IOException {
+        window().put((byte) b);
+        position++;
+    }
+
+    /** {@inheritDoc} */
+    public void write(final byte[] b) throws IOException {
+        write(b, 0, b.length);
+    }
+
+    /** {@inheritDoc} */
+    public void write(final byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            final MappedByteBuffer window = window();
+            final int c = Math.min(len, window.remaining());
+            window.put(b, off, c);
+            position += c;
+            off += c;
+            len -= c;
+        }
+    }
+
+    /**
+     * Flush this output.  Written bytes are immediately visible through the file system, so this method does nothing;
+     * use {@link #force()} to write them through to the storage device.
+     *
+     * @throws IOException never
+     */
+    public void flush() throws IOException {
+    }
+
+    /**
+     * Force all bytes written so far out to the storage device.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public void force() throws IOException {
+        final MappedByteBuffer window = this.window;
+        if (window != null) {
+            window.force();
+        }
+        channel.force(false);
+    }
+
+    /** {@inheritDoc} */
+    public void close() throws IOException {
+        window = null;
+        try {
+            channel.truncate(Math.max(position, initialSize));
+        } finally {
+            channel.close();
+        }
+    }
+}
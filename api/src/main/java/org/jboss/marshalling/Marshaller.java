@@ -20,6 +20,8 @@ package org.jboss.marshalling;
 
 import java.io.ObjectOutput;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
 
 /**
  * An object marshaller for writing objects to byte streams.
@@ -34,6 +36,24 @@ public interface Marshaller extends ObjectOutput, ByteOutput {
      */
     void writeObjectUnshared(Object obj) throws IOException;
 
+    /**
+     * Write a list whose members are taken from an iterator, without needing to know their number in advance.  It
+     * reads back as a {@link java.util.List}, or member by member through {@link Unmarshaller#readCollectionStream()}.
+     * Implementations may write the members as they are produced, in bounded chunks, rather than collecting them first.
+     * <p>
+     * The default implementation collects the members into a list and writes that.
+     *
+     * @param members the members to write
+     * @throws IOException if an error occurs
+     */
+    default void writeCollectionStream(Iterator<?> members) throws IOException {
+        final ArrayList<Object> list = new ArrayList<Object>();
+        while (members.hasNext()) {
+            list.add(members.next());
+        }
+        writeObject(list);
+    }
+
     /**
      * Begin marshalling to a stream.
      *
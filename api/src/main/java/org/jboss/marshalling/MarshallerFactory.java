@@ -42,4 +42,26 @@ public interface MarshallerFactory {
      * @throws IOException if an error occurs
      */
     Marshaller createMarshaller(MarshallingConfiguration configuration) throws IOException;
+
+    /**
+     * Create a pool of unmarshallers with this configuration, which retains up to twice as many idle unmarshallers as
+     * there are available processors.
+     *
+     * @param configuration the marshalling configuration to use
+     * @return the unmarshaller pool
+     */
+    default UnmarshallerPool createUnmarshallerPool(MarshallingConfiguration configuration) {
+        return new UnmarshallerPool(this, configuration, Runtime.getRuntime().availableProcessors() << 1);
+    }
+
+    /**
+     * Create a pool of marshallers with this configuration, which retains up to twice as many idle marshallers as there
+     * are available processors.
+     *
+     * @param configuration the marshalling configuration to use
+     * @return the marshaller pool
+     */
+    default MarshallerPool createMarshallerPool(MarshallingConfiguration configuration) {
+        return new MarshallerPool(this, configuration, Runtime.getRuntime().availableProcessors() << 1);
+    }
 }
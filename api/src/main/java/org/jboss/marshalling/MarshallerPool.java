@@ -0,0 +1,92 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.marshalling;
+
+import java.io.IOException;
+
+/**
+ * A thread-safe pool of marshallers which share one configuration.  The pool grows on demand: {@link #acquire()}
+ * creates a new marshaller whenever no idle one is available.  It shrinks by discarding released marshallers
+ * once the number of idle ones reaches the configured maximum.
+ * <p>
+ * A marshaller must be finished before it is released.  Its class cache is cleared on release, so every acquired
+ * marshaller starts out in the same state as a new one.
+ */
+public final class MarshallerPool {
+    private final MarshallerFactory factory;
+    private final MarshallingConfiguration configuration;
+    private final IdleQueue<Marshaller> idle;
+
+    /**
+     * Construct a new instance.
+     *
+     * @param factory the factory to create marshallers with
+     * @param configuration the configuration for new marshallers (copied)
+     * @param maxIdle the maximum number of idle marshallers to retain
+     */
+    public MarshallerPool(final MarshallerFactory factory, final MarshallingConfiguration configuration, final int maxIdle) {
+        if (factory == null) {
+            throw new IllegalArgumentException("factory is null");
+        }
+        if (configuration == null) {
+            throw new IllegalArgumentException("configuration is null");
+        }
+        this.factory = factory;
+        this.configuration = configuration.clone();
+        idle = new IdleQueue<Marshaller>(maxIdle);
+    }
+
+    /**
+     * Get an idle marshaller from the pool, or create a new one if none is idle.
+     *
+     * @return the marshaller
+     * @throws IOException if a new marshaller could not be created
+     */
+    public Marshaller acquire() throws IOException {
+        final Marshaller marshaller = idle.poll();
+        if (marshaller != null) {
+            return marshaller;
+        }
+        return factory.createMarshaller(configuration);
+    }
+
+    /**
+     * Return a finished marshaller to the pool.  If the pool already holds its maximum number of idle
+     * marshallers, the given one is discarded.
+     *
+     * @param marshaller the marshaller, which must have been acquired from this pool
+     * @throws IOException if the marshaller could not be reset
+     */
+    public void release(final Marshaller marshaller) throws IOException {
+        if (marshaller == null) {
+            return;
+        }
+        marshaller.clearClassCache();
+        idle.offer(marshaller);
+    }
+
+    /**
+     * Get the number of idle marshallers currently held by the pool.
+     *
+     * @return the number of idle marshallers
+     */
+    public int getIdleCount() {
+        return idle.size();
+    }
+}
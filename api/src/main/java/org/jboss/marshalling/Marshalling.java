@@ -29,6 +29,7 @@ import java.io.OptionalDataException;
 import java.io.StreamCorruptedException;
 import java.io.Serializable;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.PrivilegedAction;
 import java.util.Arrays;
 import java.util.ServiceLoader;
@@ -217,6 +218,29 @@ public final class Marshalling {
         return new ByteBufferInput(buffer);
     }
 
+    /**
+     * Create a {@code ByteInput} which reads from a sequence of {@code ByteBuffer}s without copying them.
+     *
+     * @param buffers the byte buffers, in order
+     * @param pool the pool to return consumed buffers to, or {@code null} to retain them
+     * @return the byte input
+     */
+    public static ByteInput createByteInput(final ByteBuffer[] buffers, final ByteBufferPool pool) {
+        return new ByteBufferChainInput(buffers, pool);
+    }
+
+    /**
+     * Create a {@code ByteInput} which reads from a file channel through a sliding memory-mapped window, starting
+     * at the channel's current position.
+     *
+     * @param channel the file channel
+     * @return the byte input
+     * @throws IOException if the channel position or size cannot be determined
+     */
+    public static ByteInput createByteInput(final FileChannel channel) throws IOException {
+        return new MappedFileByteInput(channel);
+    }
+
     /**
      * Create a {@code ByteInput} wrapper for an {@code InputStream}.
      *
@@ -247,6 +271,28 @@ public final class Marshalling {
         return new ByteBufferOutput(buffer);
     }
 
+    /**
+     * Create a growable {@code ByteOutput} which writes to a chain of buffers obtained from the given pool.
+     *
+     * @param pool the buffer pool
+     * @return the byte output
+     */
+    public static ByteBufferChainOutput createByteOutput(final ByteBufferPool pool) {
+        return new ByteBufferChainOutput(pool);
+    }
+
+    /**
+     * Create a {@code ByteOutput} which writes to a file channel through a sliding memory-mapped window, starting
+     * at the channel's current position.  The channel must be opened for reading and writing.
+     *
+     * @param channel the file channel
+     * @return the byte output
+     * @throws IOException if the channel position cannot be determined
+     */
+    public static ByteOutput createByteOutput(final FileChannel channel) throws IOException {
+        return new MappedFileByteOutput(channel);
+    }
+
     /**
      * Create a {@code ByteOutput} wrapper for an {@code OutputStream}.
      *
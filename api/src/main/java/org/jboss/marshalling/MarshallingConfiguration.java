@@ -34,8 +34,15 @@ public final class MarshallingConfiguration implements Cloneable {
     private SerializabilityChecker serializabilityChecker;
     private int instanceCount = 256;
     private int classCount = 64;
+    private boolean adaptiveCounts;
     private int bufferSize = 512;
     private int version = -1;
+    private boolean varIntFields;
+    private boolean precompiledFields;
+    private int classDescriptorCacheSize;
+    private int sessionClassLimit;
+    private boolean treeMode;
+    private boolean collectionStreamReset;
     private ObjectResolver objectPreResolver;
 
     /**
@@ -210,6 +217,28 @@ public final class MarshallingConfiguration implements Cloneable {
         this.classCount = classCount;
     }
 
+    /**
+     * Determine whether the instance and class counts are adapted to the graph sizes actually seen.
+     *
+     * @return {@code true} if adaptive counts are enabled
+     */
+    public boolean isAdaptiveCounts() {
+        return adaptiveCounts;
+    }
+
+    /**
+     * Set whether the instance and class counts are adapted to the graph sizes actually seen, for implementations which
+     * support it.  When enabled, the factory keeps a short history of the graph sizes of recent streams for each
+     * configuration instance, and sizes the internal tables of new marshallers and unmarshallers for a high percentile
+     * of that history; the configured counts are used until enough streams have been seen.  Reusing the same
+     * configuration instance (as the marshaller pools do) is required for the history to accumulate.
+     *
+     * @param adaptiveCounts {@code true} to enable adaptive counts
+     */
+    public void setAdaptiveCounts(final boolean adaptiveCounts) {
+        this.adaptiveCounts = adaptiveCounts;
+    }
+
     /**
      * Get the configured buffer size.
      *
@@ -247,6 +276,149 @@ public final class MarshallingConfiguration implements Cloneable {
         this.version = version;
     }
 
+    /**
+     * Determine whether {@code int} and {@code long} field values should be written using a variable-length encoding,
+     * for protocols which support it.
+     *
+     * @return {@code true} if variable-length field encoding is enabled
+     */
+    public boolean isVarIntFields() {
+        return varIntFields;
+    }
+
+    /**
+     * Set whether {@code int} and {@code long} field values should be written using a variable-length encoding, for
+     * protocols which support it.  Streams which contain mostly small values will be more compact, at the expense of
+     * larger values taking up to one extra byte.  The setting is recorded in the stream, so readers need not be configured
+     * to match.
+     *
+     * @param varIntFields {@code true} to enable variable-length field encoding
+     */
+    public void setVarIntFields(final boolean varIntFields) {
+        this.varIntFields = varIntFields;
+    }
+
+    /**
+     * Determine whether default field serialization should use a per-class precompiled field plan, for protocols which
+     * support it.
+     *
+     * @return {@code true} if precompiled field plans are enabled
+     */
+    public boolean isPrecompiledFields() {
+        return precompiledFields;
+    }
+
+    /**
+     * Set whether default field serialization should use a per-class precompiled field plan, for protocols which
+     * support it.  The plan is built once per class on first use and resolves each field's kind and location up front,
+     * which speeds up classes with many fields.  The stream format is not affected.
+     *
+     * @param precompiledFields {@code true} to enable precompiled field plans
+     */
+    public void setPrecompiledFields(final boolean precompiledFields) {
+        this.precompiledFields = precompiledFields;
+    }
+
+    /**
+     * Get the maximum number of resolved class descriptors to share between the unmarshallers of one factory, for
+     * protocols which support it.
+     *
+     * @return the maximum number of shared class descriptors, or 0 if sharing is disabled
+     */
+    public int getClassDescriptorCacheSize() {
+        return classDescriptorCacheSize;
+    }
+
+    /**
+     * Set the maximum number of resolved class descriptors to share between the unmarshallers of one factory, for
+     * protocols which support it.  Reusing descriptors saves rebuilding the descriptor graph of every class at the start
+     * of each new stream.  The class resolver is still consulted for every class, so class annotations are read as
+     * usual.  The cache is created with the size given by the first configuration which enables it for a factory, and
+     * holds strong references to the resolved classes and class resolvers.  A value of 0 (the default) disables
+     * sharing.
+     *
+     * @param classDescriptorCacheSize the maximum number of shared class descriptors, or 0 to disable sharing
+     */
+    public void setClassDescriptorCacheSize(final int classDescriptorCacheSize) {
+        if (classDescriptorCacheSize < 0) {
+            throw new IllegalArgumentException("classDescriptorCacheSize is negative");
+        }
+        this.classDescriptorCacheSize = classDescriptorCacheSize;
+    }
+
+    /**
+     * Get the maximum number of classes which a marshaller or unmarshaller retains from one stream to the next, for
+     * protocols which support it.
+     *
+     * @return the session class limit, or 0 if classes are not retained
+     */
+    public int getSessionClassLimit() {
+        return sessionClassLimit;
+    }
+
+    /**
+     * Set the maximum number of classes which a marshaller or unmarshaller retains from one stream to the next, for
+     * protocols which support it.  When enabled, a marshaller which is restarted on the same connection refers to
+     * classes it has already sent by a short index instead of sending their full description again; the unmarshaller
+     * on the other end must be reused in the same way, with a limit no smaller than the marshaller's.  Once a stream
+     * ends with more classes than the limit, all retained classes are discarded and the next stream starts afresh.
+     * After a failed stream, both sides should call {@code clearClassCache()} before the next stream.  A value of 0 (the
+     * default) disables retention.
+     *
+     * @param sessionClassLimit the session class limit, or 0 to disable retention
+     */
+    public void setSessionClassLimit(final int sessionClassLimit) {
+        if (sessionClassLimit < 0) {
+            throw new IllegalArgumentException("sessionClassLimit is negative");
+        }
+        this.sessionClassLimit = sessionClassLimit;
+    }
+
+    /**
+     * Determine whether marshallers assume that every object graph is a tree.
+     *
+     * @return {@code true} if tree mode is enabled
+     */
+    public boolean isTreeMode() {
+        return treeMode;
+    }
+
+    /**
+     * Set whether marshallers assume that every object graph is a tree, for implementations which support it.  In tree
+     * mode, a marshaller does not track object identity: every reference is written out in full and no back-references
+     * are produced, which saves an identity table lookup and update per object.  Objects which are referenced more than
+     * once are read back as separate copies, and a graph containing a cycle cannot be written at all; it recurses until
+     * the stack is exhausted.  The stream format is unchanged, so no setting is needed on the reading side.
+     *
+     * @param treeMode {@code true} to enable tree mode
+     */
+    public void setTreeMode(final boolean treeMode) {
+        this.treeMode = treeMode;
+    }
+
+    /**
+     * Determine whether collection streams limit back-references to the current chunk of members.
+     *
+     * @return {@code true} if collection stream members are reset per chunk
+     */
+    public boolean isCollectionStreamReset() {
+        return collectionStreamReset;
+    }
+
+    /**
+     * Set whether a collection written by {@code Marshaller.writeCollectionStream()} forgets its members at the end
+     * of each chunk, for protocols which write such collections in chunks.  Members may then only refer back to objects
+     * written before the collection or earlier in the same chunk, and an object reached again from a later chunk is
+     * written out again as a new copy; in return, neither side keeps more than one chunk of members in its instance
+     * table, however long the collection.  The choice is recorded in the stream, so no setting is needed on the reading
+     * side.
+     *
+     * @param collectionStreamReset {@code true} to reset collection stream members per chunk
+     */
+    public void setCollectionStreamReset(final boolean collectionStreamReset) {
+        this.collectionStreamReset = collectionStreamReset;
+    }
+
     /**
      * Get the exception listener to use.
      *
@@ -323,8 +495,15 @@ public final class MarshallingConfiguration implements Cloneable {
         }
         builder.append("instanceCount=").append(instanceCount);
         builder.append(" classCount=").append(classCount);
+        builder.append(" adaptiveCounts=").append(adaptiveCounts);
         builder.append(" bufferSize=").append(bufferSize);
         builder.append(" version=").append(version);
+        builder.append(" varIntFields=").append(varIntFields);
+        builder.append(" precompiledFields=").append(precompiledFields);
+        builder.append(" classDescriptorCacheSize=").append(classDescriptorCacheSize);
+        builder.append(" sessionClassLimit=").append(sessionClassLimit);
+        builder.append(" treeMode=").append(treeMode);
+        builder.append(" collectionStreamReset=").append(collectionStreamReset);
         return builder.toString();
     }
 }
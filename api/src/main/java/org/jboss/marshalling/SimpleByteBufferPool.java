@@ -0,0 +1,94 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.marshalling;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A simple thread-safe {@link ByteBufferPool} which hands out fixed-size buffers and retains up to a given number
+ * of freed buffers for reuse.
+ */
+public class SimpleByteBufferPool implements ByteBufferPool {
+
+    private final int bufferSize;
+    private final boolean direct;
+    private final int maxCached;
+    private final ConcurrentLinkedQueue<ByteBuffer> cache = new ConcurrentLinkedQueue<ByteBuffer>();
+    private final AtomicInteger cached = new AtomicInteger();
+
+    /**
+     * Construct a new instance.
+     *
+     * @param bufferSize the size of each buffer
+     * @param direct {@code true} to allocate direct buffers, {@code false} to allocate heap buffers
+     * @param maxCached the maximum number of free buffers to retain
+     */
+    public SimpleByteBufferPool(final int bufferSize, final boolean direct, final int maxCached) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("bufferSize < 1");
+        }
+        if (maxCached < 0) {
+            throw new IllegalArgumentException("maxCached < 0");
+        }
+        this.bufferSize = bufferSize;
+        this.direct = direct;
+        this.maxCached = maxCached;
+    }
+
+    /**
+     * Get the size of the buffers produced by this pool.
+     *
+     * @return the buffer size
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /** {@inheritDoc} */
+    public ByteBuffer allocate() {
+        final ByteBuffer buffer = cache.poll();
+        if (buffer == null) {
+            return direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+        }
+        cached.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    /** {@inheritDoc} */
+    public void free(final ByteBuffer buffer) {
+        if (buffer == null || buffer.capacity() != bufferSize || buffer.isDirect() != direct || buffer.isReadOnly()) {
+            return;
+        }
+        final AtomicInteger cached = this.cached;
+        int cnt;
+        do {
+            cnt = cached.get();
+            if (cnt >= maxCached) {
+                return;
+            }
+        } while (! cached.compareAndSet(cnt, cnt + 1));
+        cache.add(buffer);
+    }
+
+    public String toString() {
+        return "SimpleByteBufferPool@" + Integer.toHexString(hashCode()) + " (" + bufferSize + " byte " + (direct ? "direct" : "heap") + " buffers)";
+    }
+}
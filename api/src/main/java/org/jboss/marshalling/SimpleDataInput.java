@@ -258,7 +258,7 @@ public class SimpleDataInput extends ByteInputStream implements DataInput {
         } else {
             final byte[] buffer = this.buffer;
             this.position = position + 2;
-            return (short) (buffer[position] << 8 | (buffer[position + 1] & 0xff));
+            return JDKSpecific.getShort(buffer, position);
         }
     }
 
@@ -271,7 +271,7 @@ public class SimpleDataInput extends ByteInputStream implements DataInput {
         } else {
             final byte[] buffer = this.buffer;
             this.position = position + 2;
-            return (buffer[position] & 0xff) << 8 | (buffer[position + 1] & 0xff);
+            return JDKSpecific.getShort(buffer, position) & 0xffff;
         }
     }
 
@@ -307,7 +307,7 @@ public class SimpleDataInput extends ByteInputStream implements DataInput {
         } else {
             final byte[] buffer = this.buffer;
             this.position = position + 2;
-            return (char) (buffer[position] << 8 | (buffer[position + 1] & 0xff));
+            return (char) JDKSpecific.getShort(buffer, position);
         }
     }
 
@@ -322,7 +322,15 @@ public class SimpleDataInput extends ByteInputStream implements DataInput {
 
     /** {@inheritDoc} */
     protected long readLongDirect() throws IOException {
-        return (long) readIntDirect() << 32L | (long) readIntDirect() & 0xffffffffL;
+        int position = this.position;
+        int remaining = limit - position;
+        if (remaining < 8) {
+            return (long) readIntDirect() << 32L | (long) readIntDirect() & 0xffffffffL;
+        } else {
+            final byte[] buffer = this.buffer;
+            this.position = position + 8;
+            return JDKSpecific.getLong(buffer, position);
+        }
     }
 
     /** {@inheritDoc} */
@@ -344,7 +352,7 @@ public class SimpleDataInput extends ByteInputStream implements DataInput {
         } else {
             final byte[] buffer = this.buffer;
             this.position = position + 4;
-            return buffer[position] << 24 | (buffer[position + 1] & 0xff) << 16 | (buffer[position + 2] & 0xff) << 8 | (buffer[position + 3] & 0xff);
+            return JDKSpecific.getInt(buffer, position);
         }
     }
 
@@ -353,6 +361,210 @@ public class SimpleDataInput extends ByteInputStream implements DataInput {
         return Double.longBitsToDouble(readLongDirect());
     }
 
+    /**
+     * Read a sequence of {@code short} values into an array.  The values are expected in the same format as
+     * {@link #readShort()}, but are decoded from the internal buffer in bulk.
+     *
+     * @param values the destination array
+     * @param off the offset into the destination array
+     * @param len the number of values to read
+     * @throws IOException if an I/O error occurs
+     */
+    public void readShorts(final short[] values, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off > values.length - len) {
+            throw new IndexOutOfBoundsException();
+        }
+        final byte[] buffer = this.buffer;
+        while (len > 0) {
+            int position = this.position;
+            int cnt = (limit - position) >> 1;
+            if (cnt <= 0) {
+                // value straddles the buffer boundary (or end of stream)
+                values[off++] = readShort();
+                len --;
+                continue;
+            }
+            if (cnt > len) cnt = len;
+            for (int i = 0; i < cnt; i ++) {
+                values[off + i] = JDKSpecific.getShort(buffer, position);
+                position += 2;
+            }
+            this.position = position;
+            off += cnt;
+            len -= cnt;
+        }
+    }
+
+    /**
+     * Read a sequence of {@code char} values into an array.  The values are expected in the same format as
+     * {@link #readChar()}, but are decoded from the internal buffer in bulk.
+     *
+     * @param values the destination array
+     * @param off the offset into the destination array
+     * @param len the number of values to read
+     * @throws IOException if an I/O error occurs
+     */
+    public void readChars(final char[] values, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off > values.length - len) {
+            throw new IndexOutOfBoundsException();
+        }
+        final byte[] buffer = this.buffer;
+        while (len > 0) {
+            int position = this.position;
+            int cnt = (limit - position) >> 1;
+            if (cnt <= 0) {
+                // value straddles the buffer boundary (or end of stream)
+                values[off++] = readChar();
+                len --;
+                continue;
+            }
+            if (cnt > len) cnt = len;
+            for (int i = 0; i < cnt; i ++) {
+                values[off + i] = (char) JDKSpecific.getShort(buffer, position);
+                position += 2;
+            }
+            this.position = position;
+            off += cnt;
+            len -= cnt;
+        }
+    }
+
+    /**
+     * Read a sequence of {@code int} values into an array.  The values are expected in the same format as
+     * {@link #readInt()}, but are decoded from the internal buffer in bulk.
+     *
+     * @param values the destination array
+     * @param off the offset into the destination array
+     * @param len the number of values to read
+     * @throws IOException if an I/O error occurs
+     */
+    public void readInts(final int[] values, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off > values.length - len) {
+            throw new IndexOutOfBoundsException();
+        }
+        final byte[] buffer = this.buffer;
+        while (len > 0) {
+            int position = this.position;
+            int cnt = (limit - position) >> 2;
+            if (cnt <= 0) {
+                // value straddles the buffer boundary (or end of stream)
+                values[off++] = readInt();
+                len --;
+                continue;
+            }
+            if (cnt > len) cnt = len;
+            for (int i = 0; i < cnt; i ++) {
+                values[off + i] = JDKSpecific.getInt(buffer, position);
+                position += 4;
+            }
+            this.position = position;
+            off += cnt;
+            len -= cnt;
+        }
+    }
+
+    /**
+     * Read a sequence of {@code long} values into an array.  The values are expected in the same format as
+     * {@link #readLong()}, but are decoded from the internal buffer in bulk.
+     *
+     * @param values the destination array
+     * @param off the offset into the destination array
+     * @param len the number of values to read
+     * @throws IOException if an I/O error occurs
+     */
+    public void readLongs(final long[] values, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off > values.length - len) {
+            throw new IndexOutOfBoundsException();
+        }
+        final byte[] buffer = this.buffer;
+        while (len > 0) {
+            int position = this.position;
+            int cnt = (limit - position) >> 3;
+            if (cnt <= 0) {
+                // value straddles the buffer boundary (or end of stream)
+                values[off++] = readLong();
+                len --;
+                continue;
+            }
+            if (cnt > len) cnt = len;
+            for (int i = 0; i < cnt; i ++) {
+                values[off + i] = JDKSpecific.getLong(buffer, position);
+                position += 8;
+            }
+            this.position = position;
+            off += cnt;
+            len -= cnt;
+        }
+    }
+
+    /**
+     * Read a sequence of {@code float} values into an array.  The values are expected in the same format as
+     * {@link #readFloat()}, but are decoded from the internal buffer in bulk.
+     *
+     * @param values the destination array
+     * @param off the offset into the destination array
+     * @param len the number of values to read
+     * @throws IOException if an I/O error occurs
+     */
+    public void readFloats(final float[] values, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off > values.length - len) {
+            throw new IndexOutOfBoundsException();
+        }
+        final byte[] buffer = this.buffer;
+        while (len > 0) {
+            int position = this.position;
+            int cnt = (limit - position) >> 2;
+            if (cnt <= 0) {
+                // value straddles the buffer boundary (or end of stream)
+                values[off++] = readFloat();
+                len --;
+                continue;
+            }
+            if (cnt > len) cnt = len;
+            for (int i = 0; i < cnt; i ++) {
+                values[off + i] = Float.intBitsToFloat(JDKSpecific.getInt(buffer, position));
+                position += 4;
+            }
+            this.position = position;
+            off += cnt;
+            len -= cnt;
+        }
+    }
+
+    /**
+     * Read a sequence of {@code double} values into an array.  The values are expected in the same format as
+     * {@link #readDouble()}, but are decoded from the internal buffer in bulk.
+     *
+     * @param values the destination array
+     * @param off the offset into the destination array
+     * @param len the number of values to read
+     * @throws IOException if an I/O error occurs
+     */
+    public void readDoubles(final double[] values, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off > values.length - len) {
+            throw new IndexOutOfBoundsException();
+        }
+        final byte[] buffer = this.buffer;
+        while (len > 0) {
+            int position = this.position;
+            int cnt = (limit - position) >> 3;
+            if (cnt <= 0) {
+                // value straddles the buffer boundary (or end of stream)
+                values[off++] = readDouble();
+                len --;
+                continue;
+            }
+            if (cnt > len) cnt = len;
+            for (int i = 0; i < cnt; i ++) {
+                values[off + i] = Double.longBitsToDouble(JDKSpecific.getLong(buffer, position));
+                position += 8;
+            }
+            this.position = position;
+            off += cnt;
+            len -= cnt;
+        }
+    }
+
     /** {@inheritDoc} */
     public String readLine() throws IOException {
         throw new UnsupportedOperationException("readLine() not supported");
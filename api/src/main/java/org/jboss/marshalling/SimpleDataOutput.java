@@ -36,6 +36,7 @@ public class SimpleDataOutput extends ByteOutputStream implements DataOutput {
      * The internal buffer.
      */
     protected byte[] buffer;
+    private byte[] spareBuffer;
     /**
      * The position in the buffer.
      */
@@ -150,17 +151,14 @@ public class SimpleDataOutput extends ByteOutputStream implements DataOutput {
     public void writeShort(final int v) throws IOException {
         try {
             final byte[] buffer = this.buffer;
-            final int remaining = buffer.length - position;
-            if (remaining < 2) {
+            final int position = this.position;
+            if (buffer.length - position < 2) {
                 flush();
-                buffer[0] = (byte) (v >> 8);
-                buffer[1] = (byte) v;
-                position = 2;
+                JDKSpecific.putShort(buffer, 0, v);
+                this.position = 2;
             } else {
-                final int s = position;
-                position = s + 2;
-                buffer[s]   = (byte) (v >> 8);
-                buffer[s+1] = (byte) v;
+                JDKSpecific.putShort(buffer, position, v);
+                this.position = position + 2;
             }
         } catch (NullPointerException e) {
             throw notActiveException();
@@ -171,17 +169,14 @@ public class SimpleDataOutput extends ByteOutputStream implements DataOutput {
     public void writeChar(final int v) throws IOException {
         try {
             final byte[] buffer = this.buffer;
-            final int remaining = buffer.length - position;
-            if (remaining < 2) {
+            final int position = this.position;
+            if (buffer.length - position < 2) {
                 flush();
-                buffer[0] = (byte) (v >> 8);
-                buffer[1] = (byte) v;
-                position = 2;
+                JDKSpecific.putShort(buffer, 0, v);
+                this.position = 2;
             } else {
-                final int s = position;
-                position = s + 2;
-                buffer[s]   = (byte) (v >> 8);
-                buffer[s+1] = (byte) v;
+                JDKSpecific.putShort(buffer, position, v);
+                this.position = position + 2;
             }
         } catch (NullPointerException e) {
             throw notActiveException();
@@ -192,21 +187,14 @@ public class SimpleDataOutput extends ByteOutputStream implements DataOutput {
     public void writeInt(final int v) throws IOException {
         try {
             final byte[] buffer = this.buffer;
-            final int remaining = buffer.length - position;
-            if (remaining < 4) {
+            final int position = this.position;
+            if (buffer.length - position < 4) {
                 flush();
-                buffer[0] = (byte) (v >> 24);
-                buffer[1] = (byte) (v >> 16);
-                buffer[2] = (byte) (v >> 8);
-                buffer[3] = (byte) v;
-                position = 4;
+                JDKSpecific.putInt(buffer, 0, v);
+                this.position = 4;
             } else {
-                final int s = position;
-                position = s + 4;
-                buffer[s]   = (byte) (v >> 24);
-                buffer[s+1] = (byte) (v >> 16);
-                buffer[s+2] = (byte) (v >> 8);
-                buffer[s+3] = (byte) v;
+                JDKSpecific.putInt(buffer, position, v);
+                this.position = position + 4;
             }
         } catch (NullPointerException e) {
             throw notActiveException();
@@ -217,29 +205,14 @@ public class SimpleDataOutput extends ByteOutputStream implements DataOutput {
     public void writeLong(final long v) throws IOException {
         try {
             final byte[] buffer = this.buffer;
-            final int remaining = buffer.length - position;
-            if (remaining < 8) {
+            final int position = this.position;
+            if (buffer.length - position < 8) {
                 flush();
-                buffer[0] = (byte) (v >> 56L);
-                buffer[1] = (byte) (v >> 48L);
-                buffer[2] = (byte) (v >> 40L);
-                buffer[3] = (byte) (v >> 32L);
-                buffer[4] = (byte) (v >> 24L);
-                buffer[5] = (byte) (v >> 16L);
-                buffer[6] = (byte) (v >> 8L);
-                buffer[7] = (byte) v;
-                position = 8;
+                JDKSpecific.putLong(buffer, 0, v);
+                this.position = 8;
             } else {
-                final int s = position;
-                position = s + 8;
-                buffer[s]   = (byte) (v >> 56L);
-                buffer[s+1] = (byte) (v >> 48L);
-                buffer[s+2] = (byte) (v >> 40L);
-                buffer[s+3] = (byte) (v >> 32L);
-                buffer[s+4] = (byte) (v >> 24L);
-                buffer[s+5] = (byte) (v >> 16L);
-                buffer[s+6] = (byte) (v >> 8L);
-                buffer[s+7] = (byte) v;
+                JDKSpecific.putLong(buffer, position, v);
+                this.position = position + 8;
             }
         } catch (NullPointerException e) {
             throw notActiveException();
@@ -248,24 +221,16 @@ public class SimpleDataOutput extends ByteOutputStream implements DataOutput {
 
     /** {@inheritDoc} */
     public void writeFloat(final float v) throws IOException {
-        final int bits = Float.floatToIntBits(v);
         try {
             final byte[] buffer = this.buffer;
-            final int remaining = buffer.length - position;
-            if (remaining < 4) {
+            final int position = this.position;
+            if (buffer.length - position < 4) {
                 flush();
-                buffer[0] = (byte) (bits >> 24);
-                buffer[1] = (byte) (bits >> 16);
-                buffer[2] = (byte) (bits >> 8);
-                buffer[3] = (byte) bits;
-                position = 4;
+                JDKSpecific.putInt(buffer, 0, Float.floatToIntBits(v));
+                this.position = 4;
             } else {
-                final int s = position;
-                position = s + 4;
-                buffer[s]   = (byte) (bits >> 24);
-                buffer[s+1] = (byte) (bits >> 16);
-                buffer[s+2] = (byte) (bits >> 8);
-                buffer[s+3] = (byte) bits;
+                JDKSpecific.putInt(buffer, position, Float.floatToIntBits(v));
+                this.position = position + 4;
             }
         } catch (NullPointerException e) {
             throw notActiveException();
@@ -274,32 +239,245 @@ public class SimpleDataOutput extends ByteOutputStream implements DataOutput {
 
     /** {@inheritDoc} */
     public void writeDouble(final double v) throws IOException {
-        final long bits = Double.doubleToLongBits(v);
         try {
-            final int remaining = buffer.length - position;
-            if (remaining < 8) {
+            final byte[] buffer = this.buffer;
+            final int position = this.position;
+            if (buffer.length - position < 8) {
                 flush();
-                buffer[0] = (byte) (bits >> 56L);
-                buffer[1] = (byte) (bits >> 48L);
-                buffer[2] = (byte) (bits >> 40L);
-                buffer[3] = (byte) (bits >> 32L);
-                buffer[4] = (byte) (bits >> 24L);
-                buffer[5] = (byte) (bits >> 16L);
-                buffer[6] = (byte) (bits >> 8L);
-                buffer[7] = (byte) bits;
-                position = 8;
+                JDKSpecific.putLong(buffer, 0, Double.doubleToLongBits(v));
+                this.position = 8;
             } else {
-                final int s = position;
-                position = s + 8;
-                buffer[s]   = (byte) (bits >> 56L);
-                buffer[s+1] = (byte) (bits >> 48L);
-                buffer[s+2] = (byte) (bits >> 40L);
-                buffer[s+3] = (byte) (bits >> 32L);
-                buffer[s+4] = (byte) (bits >> 24L);
-                buffer[s+5] = (byte) (bits >> 16L);
-                buffer[s+6] = (byte) (bits >> 8L);
-                buffer[s+7] = (byte) bits;
+                JDKSpecific.putLong(buffer, position, Double.doubleToLongBits(v));
+                this.position = position + 8;
+            }
+        } catch (NullPointerException e) {
+            throw notActiveException();
+        }
+    }
+
+    /**
+     * Write a sequence of {@code short} values from an array.  The values are written in the same format as
+     * {@link #writeShort(int)}, but are packed into the internal buffer in bulk.
+     *
+     * @param values the source array
+     * @param off the offset into the source array
+     * @param len the number of values to write
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeShorts(final short[] values, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off > values.length - len) {
+            throw new IndexOutOfBoundsException();
+        }
+        try {
+            final byte[] buffer = this.buffer;
+            int position = this.position;
+            while (len > 0) {
+                int cnt = (buffer.length - position) >> 1;
+                if (cnt == 0) {
+                    this.position = position;
+                    shallowFlush();
+                    position = 0;
+                    cnt = Math.max(1, buffer.length >> 1);
+                }
+                if (cnt > len) cnt = len;
+                for (int i = 0; i < cnt; i ++) {
+                    JDKSpecific.putShort(buffer, position, values[off + i]);
+                    position += 2;
+                }
+                off += cnt;
+                len -= cnt;
+            }
+            this.position = position;
+        } catch (NullPointerException e) {
+            throw notActiveException();
+        }
+    }
+
+    /**
+     * Write a sequence of {@code char} values from an array.  The values are written in the same format as
+     * {@link #writeChar(int)}, but are packed into the internal buffer in bulk.
+     *
+     * @param values the source array
+     * @param off the offset into the source array
+     * @param len the number of values to write
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeChars(final char[] values, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off > values.length - len) {
+            throw new IndexOutOfBoundsException();
+        }
+        try {
+            final byte[] buffer = this.buffer;
+            int position = this.position;
+            while (len > 0) {
+                int cnt = (buffer.length - position) >> 1;
+                if (cnt == 0) {
+                    this.position = position;
+                    shallowFlush();
+                    position = 0;
+                    cnt = Math.max(1, buffer.length >> 1);
+                }
+                if (cnt > len) cnt = len;
+                for (int i = 0; i < cnt; i ++) {
+                    JDKSpecific.putShort(buffer, position, values[off + i]);
+                    position += 2;
+                }
+                off += cnt;
+                len -= cnt;
+            }
+            this.position = position;
+        } catch (NullPointerException e) {
+            throw notActiveException();
+        }
+    }
+
+    /**
+     * Write a sequence of {@code int} values from an array.  The values are written in the same format as
+     * {@link #writeInt(int)}, but are packed into the internal buffer in bulk.
+     *
+     * @param values the source array
+     * @param off the offset into the source array
+     * @param len the number of values to write
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeInts(final int[] values, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off > values.length - len) {
+            throw new IndexOutOfBoundsException();
+        }
+        try {
+            final byte[] buffer = this.buffer;
+            int position = this.position;
+            while (len > 0) {
+                int cnt = (buffer.length - position) >> 2;
+                if (cnt == 0) {
+                    this.position = position;
+                    shallowFlush();
+                    position = 0;
+                    cnt = Math.max(1, buffer.length >> 2);
+                }
+                if (cnt > len) cnt = len;
+                for (int i = 0; i < cnt; i ++) {
+                    JDKSpecific.putInt(buffer, position, values[off + i]);
+                    position += 4;
+                }
+                off += cnt;
+                len -= cnt;
             }
+            this.position = position;
+        } catch (NullPointerException e) {
+            throw notActiveException();
+        }
+    }
+
+    /**
+     * Write a sequence of {@code long} values from an array.  The values are written in the same format as
+     * {@link #writeLong(long)}, but are packed into the internal buffer in bulk.
+     *
+     * @param values the source array
+     * @param off the offset into the source array
+     * @param len the number of values to write
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeLongs(final long[] values, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off > values.length - len) {
+            throw new IndexOutOfBoundsException();
+        }
+        try {
+            final byte[] buffer = this.buffer;
+            int position = this.position;
+            while (len > 0) {
+                int cnt = (buffer.length - position) >> 3;
+                if (cnt == 0) {
+                    this.position = position;
+                    shallowFlush();
+                    position = 0;
+                    cnt = Math.max(1, buffer.length >> 3);
+                }
+                if (cnt > len) cnt = len;
+                for (int i = 0; i < cnt; i ++) {
+                    JDKSpecific.putLong(buffer, position, values[off + i]);
+                    position += 8;
+                }
+                off += cnt;
+                len -= cnt;
+            }
+            this.position = position;
+        } catch (NullPointerException e) {
+            throw notActiveException();
+        }
+    }
+
+    /**
+     * Write a sequence of {@code float} values from an array.  The values are written in the same format as
+     * {@link #writeFloat(float)}, but are packed into the internal buffer in bulk.
+     *
+     * @param values the source array
+     * @param off the offset into the source array
+     * @param len the number of values to write
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeFloats(final float[] values, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off > values.length - len) {
+            throw new IndexOutOfBoundsException();
+        }
+        try {
+            final byte[] buffer = this.buffer;
+            int position = this.position;
+            while (len > 0) {
+                int cnt = (buffer.length - position) >> 2;
+                if (cnt == 0) {
+                    this.position = position;
+                    shallowFlush();
+                    position = 0;
+                    cnt = Math.max(1, buffer.length >> 2);
+                }
+                if (cnt > len) cnt = len;
+                for (int i = 0; i < cnt; i ++) {
+                    JDKSpecific.putInt(buffer, position, Float.floatToIntBits(values[off + i]));
+                    position += 4;
+                }
+                off += cnt;
+                len -= cnt;
+            }
+            this.position = position;
+        } catch (NullPointerException e) {
+            throw notActiveException();
+        }
+    }
+
+    /**
+     * Write a sequence of {@code double} values from an array.  The values are written in the same format as
+     * {@link #writeDouble(double)}, but are packed into the internal buffer in bulk.
+     *
+     * @param values the source array
+     * @param off the offset into the source array
+     * @param len the number of values to write
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeDoubles(final double[] values, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off > values.length - len) {
+            throw new IndexOutOfBoundsException();
+        }
+        try {
+            final byte[] buffer = this.buffer;
+            int position = this.position;
+            while (len > 0) {
+                int cnt = (buffer.length - position) >> 3;
+                if (cnt == 0) {
+                    this.position = position;
+                    shallowFlush();
+                    position = 0;
+                    cnt = Math.max(1, buffer.length >> 3);
+                }
+                if (cnt > len) cnt = len;
+                for (int i = 0; i < cnt; i ++) {
+                    JDKSpecific.putLong(buffer, position, Double.doubleToLongBits(values[off + i]));
+                    position += 8;
+                }
+                off += cnt;
+                len -= cnt;
+            }
+            this.position = position;
         } catch (NullPointerException e) {
             throw notActiveException();
         }
@@ -327,6 +505,39 @@ public class SimpleDataOutput extends ByteOutputStream implements DataOutput {
         UTFUtils.writeUTFBytes(this, s);
     }
 
+    /**
+     * Write the modified UTF-8 form of a string directly into the internal buffer, flushing it as it fills.
+     *
+     * @param s the string
+     * @throws IOException if an I/O error occurs
+     */
+    void writeUTFBytes(final String s) throws IOException {
+        final int length = s.length();
+        try {
+            final byte[] buffer = this.buffer;
+            int strIdx = 0;
+            for (;;) {
+                final long res = UTFUtils.encode(s, strIdx, buffer, position);
+                final int next = (int) (res >>> 32);
+                position = (int) res;
+                if (next == length) {
+                    return;
+                }
+                if (next == strIdx && position == 0) {
+                    throw new IOException("Buffer of " + buffer.length + " bytes cannot hold a character of the string");
+                }
+                strIdx = next;
+                shallowFlush();
+                if (position != 0) {
+                    // there is nowhere to flush to, so no room can be made
+                    throw notActiveException();
+                }
+            }
+        } catch (NullPointerException e) {
+            throw notActiveException();
+        }
+    }
+
     /** {@inheritDoc} */
     public void flush() throws IOException {
         final int pos = position;
@@ -364,7 +575,12 @@ public class SimpleDataOutput extends ByteOutputStream implements DataOutput {
      */
     protected void start(ByteOutput byteOutput) throws IOException {
         this.byteOutput = byteOutput;
-        buffer = new byte[bufferSize];
+        if (buffer == null) {
+            final byte[] spareBuffer = this.spareBuffer;
+            buffer = spareBuffer != null ? spareBuffer : new byte[bufferSize];
+            this.spareBuffer = null;
+        }
+        position = 0;
     }
 
     /**
@@ -377,6 +593,8 @@ public class SimpleDataOutput extends ByteOutputStream implements DataOutput {
         try {
             flush();
         } finally {
+            // keep the buffer for the next start()
+            spareBuffer = buffer;
             buffer = null;
             byteOutput = null;
         }
@@ -36,14 +36,6 @@ public final class UTFUtils {
     private static final int UTF_BUFS_CHAR_CNT = 256;
     private static final int UTF_BUFS_BYTE_CNT = UTF_BUFS_CHAR_CNT * 3;
 
-    private static final class BytesHolder extends ThreadLocal<byte[]> {
-        protected byte[] initialValue() {
-            return new byte[UTF_BUFS_BYTE_CNT];
-        }
-    }
-
-    private static final BytesHolder BYTES_HOLDER = new BytesHolder();
-
     /**
      * Get the number of bytes used by the modified UTF-8 encoded form of the given string.  If the length is
      * greater than {@code 65536}, an exception is thrown.
@@ -104,103 +96,158 @@ public final class UTFUtils {
      * @see java.io.DataOutput#writeUTF(String)
      */
     public static void writeUTFBytes(final ByteOutput output, final String s) throws IOException {
-        final byte[] byteBuf = BYTES_HOLDER.get();
-
+        if (output instanceof SimpleDataOutput) {
+            // encode straight into the output's own buffer
+            ((SimpleDataOutput) output).writeUTFBytes(s);
+            return;
+        }
         final int length = s.length();
-
+        if (length == 0) {
+            return;
+        }
+        final byte[] byteBuf = new byte[(int) Math.min((long) UTF_BUFS_BYTE_CNT, length * 3L)];
         int strIdx = 0;
-        int byteIdx = 0;
+        for (;;) {
+            final long res = encode(s, strIdx, byteBuf, 0);
+            strIdx = (int) (res >>> 32);
+            output.write(byteBuf, 0, (int) res);
+            if (strIdx == length) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Encode characters of a string into a byte buffer in modified UTF-8 form.  Encoding stops at the end of the
+     * string or when the next character does not fit in the buffer.
+     *
+     * @return the new string index in the upper 32 bits and the new byte index in the lower 32 bits
+     */
+    static long encode(final String s, int strIdx, final byte[] bytes, int byteIdx) {
+        final int length = s.length();
+        final int cap = bytes.length;
         while (strIdx < length) {
-            final char c = s.charAt(strIdx ++);
-            if (c > 0 && c <= 0x7f) {
-                byteBuf[byteIdx ++] = (byte) c;
-            } else if (c <= 0x07ff) {
-                byteBuf[byteIdx ++] = (byte)(0xc0 | 0x1f & c >> 6);
-                byteBuf[byteIdx ++] = (byte)(0x80 | 0x3f & c);
-            } else {
-                byteBuf[byteIdx ++] = (byte)(0xe0 | 0x0f & c >> 12);
-                byteBuf[byteIdx ++] = (byte)(0x80 | 0x3f & c >> 6);
-                byteBuf[byteIdx ++] = (byte)(0x80 | 0x3f & c);
+            // copy a run of ASCII characters, bounded by the space left in the buffer
+            final int end = strIdx + Math.min(length - strIdx, cap - byteIdx);
+            char c = 0;
+            while (strIdx < end && (c = s.charAt(strIdx)) > 0 && c <= 0x7f) {
+                bytes[byteIdx ++] = (byte) c;
+                strIdx ++;
             }
-            if (byteIdx > UTF_BUFS_BYTE_CNT - 4) {
-                output.write(byteBuf, 0, byteIdx);
-                byteIdx = 0;
+            if (strIdx == end) {
+                if (byteIdx == cap) {
+                    break;
+                }
+                continue;
             }
+            if (c <= 0x07ff) {
+                if (cap - byteIdx < 2) {
+                    break;
+                }
+                bytes[byteIdx ++] = (byte)(0xc0 | 0x1f & c >> 6);
+                bytes[byteIdx ++] = (byte)(0x80 | 0x3f & c);
+            } else {
+                if (cap - byteIdx < 3) {
+                    break;
+                }
+                bytes[byteIdx ++] = (byte)(0xe0 | 0x0f & c >> 12);
+                bytes[byteIdx ++] = (byte)(0x80 | 0x3f & c >> 6);
+                bytes[byteIdx ++] = (byte)(0x80 | 0x3f & c);
+            }
+            strIdx ++;
         }
-        if (byteIdx > 0) {
-            output.write(byteBuf, 0, byteIdx);
-        }
+        return (long) strIdx << 32 | byteIdx & 0xffffffffL;
     }
 
     /**
-     * Read the given number of characters from the given byte input.  The length given is in characters,
-     * <b>NOT</b> in bytes.
+     * Decode complete modified UTF-8 sequences from a byte buffer into a character buffer.  Decoding stops at the
+     * end of the byte range or at a multibyte sequence which is cut off by the end of the range.
      *
-     * @param input the byte source
-     * @param len the number of characters to read
-     * @return the string
-     * @throws IOException if an I/O error occurs
-     * @see java.io.DataInput#readUTF()
+     * @return the new byte index in the upper 32 bits and the new character index in the lower 32 bits
      */
-    public static String readUTFBytes(final ByteInput input, final int len) throws IOException {
-        final byte[] byteBuf = BYTES_HOLDER.get();
-        final char[] chars = new char[len];
-        int i = 0, cnt = 0, charIdx = 0;
-        while (charIdx < len) {
-            if (i == cnt) {
-                cnt = input.read(byteBuf, 0, Math.min(UTF_BUFS_BYTE_CNT, len - charIdx));
-                if (cnt < 0) {
-                    throw new EOFException();
+    private static long decode(final byte[] bytes, int i, final int cnt, final char[] chars, int charIdx) throws UTFDataFormatException {
+        while (i < cnt) {
+            // check eight bytes at a time for an all-ASCII run
+            while (i <= cnt - 8 && (JDKSpecific.getLong(bytes, i) & 0x8080808080808080L) == 0L) {
+                for (int j = 0; j < 8; j ++) {
+                    chars[charIdx ++] = (char) bytes[i ++];
                 }
-                i = 0;
             }
-            final int a = byteBuf[i++] & 0xff;
-            if (a < 0x80) {
-                // low bit clear
+            int a;
+            while (i < cnt && (a = bytes[i]) >= 0) {
                 chars[charIdx ++] = (char) a;
-            } else if (a < 0xc0) {
+                i ++;
+            }
+            if (i == cnt) {
+                break;
+            }
+            a = bytes[i] & 0xff;
+            if (a < 0xc0) {
                 throw new UTFDataFormatException(INVALID_BYTE);
             } else if (a < 0xe0) {
-                if (i == cnt) {
-                    cnt = input.read(byteBuf, 0, Math.min(UTF_BUFS_BYTE_CNT, len - charIdx));
-                    if (cnt < 0) {
-                        throw new EOFException();
-                    }
-                    i = 0;
+                if (i + 2 > cnt) {
+                    break;
                 }
-                final int b = byteBuf[i ++] & 0xff;
+                final int b = bytes[i + 1] & 0xff;
                 if ((b & 0xc0) != 0x80) {
                     throw new UTFDataFormatException(INVALID_BYTE);
                 }
                 chars[charIdx ++] = (char) ((a & 0x1f) << 6 | b & 0x3f);
+                i += 2;
             } else if (a < 0xf0) {
-                if (i == cnt) {
-                    cnt = input.read(byteBuf, 0, Math.min(UTF_BUFS_BYTE_CNT, len - charIdx));
-                    if (cnt < 0) {
-                        throw new EOFException();
-                    }
-                    i = 0;
+                if (i + 3 > cnt) {
+                    break;
                 }
-                final int b = byteBuf[i ++] & 0xff;
+                final int b = bytes[i + 1] & 0xff;
                 if ((b & 0xc0) != 0x80) {
                     throw new UTFDataFormatException(INVALID_BYTE);
                 }
-                if (i == cnt) {
-                    cnt = input.read(byteBuf, 0, Math.min(UTF_BUFS_BYTE_CNT, len - charIdx));
-                    if (cnt < 0) {
-                        throw new EOFException();
-                    }
-                    i = 0;
-                }
-                final int c = byteBuf[i ++] & 0xff;
+                final int c = bytes[i + 2] & 0xff;
                 if ((c & 0xc0) != 0x80) {
                     throw new UTFDataFormatException(INVALID_BYTE);
                 }
                 chars[charIdx ++] = (char) ((a & 0x0f) << 12 | (b & 0x3f) << 6 | c & 0x3f);
+                i += 3;
             } else {
                 throw new UTFDataFormatException(INVALID_BYTE);
             }
         }
+        return (long) i << 32 | charIdx & 0xffffffffL;
+    }
+
+    /**
+     * Read the given number of characters from the given byte input.  The length given is in characters,
+     * <b>NOT</b> in bytes.
+     *
+     * @param input the byte source
+     * @param len the number of characters to read
+     * @return the string
+     * @throws IOException if an I/O error occurs
+     * @see java.io.DataInput#readUTF()
+     */
+    public static String readUTFBytes(final ByteInput input, final int len) throws IOException {
+        if (input instanceof SimpleDataInput) {
+            return readUTFBytes((SimpleDataInput) input, len);
+        }
+        // room for one partially read sequence plus at least one new byte
+        final byte[] byteBuf = new byte[(int) Math.min((long) UTF_BUFS_BYTE_CNT, len + 2L)];
+        final char[] chars = new char[len];
+        int carry = 0, charIdx = 0;
+        while (charIdx < len) {
+            // every character takes at least one byte, so this never reads past the end of the string
+            final int cnt = input.read(byteBuf, carry, Math.min(byteBuf.length - carry, len - charIdx));
+            if (cnt < 0) {
+                throw new EOFException();
+            }
+            final int end = carry + cnt;
+            final long res = decode(byteBuf, 0, end, chars, charIdx);
+            final int i = (int) (res >>> 32);
+            charIdx = (int) res;
+            carry = end - i;
+            if (carry > 0) {
+                System.arraycopy(byteBuf, i, byteBuf, 0, carry);
+            }
+        }
         return String.valueOf(chars);
     }
 
@@ -214,58 +261,117 @@ public final class UTFUtils {
      * @see java.io.DataInput#readUTF()
      */
     public static String readUTFBytesByByteCount(final ByteInput input, final long len) throws IOException {
-        final StringBuilder builder = new StringBuilder();
-        for (long i = 0; i < len; i ++) {
-            final int a = input.read();
-            if (a < 0) {
-                throw new EOFException("Expected " + (len - i) + " more bytes");
-            } else if (a == 0) {
-                builder.append('\0');
-            } else if (a < 0x80) {
-                builder.append((char) a);
-            } else if (a < 0xc0) {
-                throw new UTFDataFormatException(INVALID_BYTE);
-            } else if (a < 0xe0) {
-                if (++i < len) {
-                    final int b = input.read();
-                    if (b == -1) {
-                        throw new EOFException("Expected " + (len - i) + " more bytes");
-                    } else if ((b & 0xc0) != 0x80) {
-                        throw new UTFDataFormatException(INVALID_BYTE);
-                    }
-                    builder.append((char) ((a & 0x1f) << 6 | b & 0x3f));
-                } else {
-                    throw new UTFDataFormatException(MALFORMED);
+        if (input instanceof SimpleDataInput) {
+            return readUTFBytesByByteCount((SimpleDataInput) input, len);
+        }
+        final byte[] byteBuf = new byte[(int) Math.min(len, (long) UTF_BUFS_BYTE_CNT)];
+        final char[] chars = new char[byteBuf.length];
+        final StringBuilder builder = new StringBuilder((int) Math.min(len, 0x10000L));
+        long remaining = len;
+        int carry = 0;
+        while (remaining > 0L) {
+            final int end = carry + (int) Math.min((long) (byteBuf.length - carry), remaining);
+            int i = carry;
+            while (i < end) {
+                final int cnt = input.read(byteBuf, i, end - i);
+                if (cnt < 0) {
+                    throw new EOFException("Expected " + (remaining - (i - carry)) + " more bytes");
                 }
-            } else if (a < 0xf0) {
-                if (++i < len) {
-                    final int b = input.read();
-                    if (b == -1) {
-                        throw new EOFException("Expected " + (len - i) + " more bytes");
-                    } else if ((b & 0xc0) != 0x80) {
-                        throw new UTFDataFormatException(INVALID_BYTE);
-                    }
-                    if (++i < len) {
-                        final int c1 = input.read();
-                        if (c1 == -1) {
-                            throw new EOFException("Expected " + (len - i) + " more bytes");
-                        } else if ((c1 & 0xc0) != 0x80) {
-                            throw new UTFDataFormatException(INVALID_BYTE);
-                        }
-                        builder.append((char) ((a & 0x0f) << 12 | (b & 0x3f) << 6 | c1 & 0x3f));
-                    } else {
-                        throw new UTFDataFormatException(MALFORMED);
-                    }
-                } else {
+                i += cnt;
+            }
+            remaining -= end - carry;
+            final long res = decode(byteBuf, 0, end, chars, 0);
+            i = (int) (res >>> 32);
+            builder.append(chars, 0, (int) res);
+            carry = end - i;
+            if (carry > 0) {
+                if (remaining == 0L) {
                     throw new UTFDataFormatException(MALFORMED);
                 }
-            } else {
-                throw new UTFDataFormatException(INVALID_BYTE);
+                System.arraycopy(byteBuf, i, byteBuf, 0, carry);
             }
         }
         return builder.toString();
     }
 
+    private static String readUTFBytes(final SimpleDataInput input, final int len) throws IOException {
+        final byte[] buffer = input.buffer;
+        final char[] chars = new char[len];
+        int charIdx = 0;
+        while (charIdx < len) {
+            final int position = input.position;
+            final int avail = input.limit - position;
+            if (avail > 0) {
+                final long res = decode(buffer, position, position + Math.min(avail, len - charIdx), chars, charIdx);
+                input.position = (int) (res >>> 32);
+                charIdx = (int) res;
+                if (charIdx == len) {
+                    break;
+                }
+            }
+            // the buffer is drained, or a sequence straddles its end
+            chars[charIdx ++] = readUTFChar(input, input.readUnsignedByteDirect());
+        }
+        return String.valueOf(chars);
+    }
+
+    private static String readUTFBytesByByteCount(final SimpleDataInput input, final long len) throws IOException {
+        final byte[] buffer = input.buffer;
+        final char[] chars = new char[(int) Math.min(len, (long) buffer.length)];
+        final StringBuilder builder = new StringBuilder((int) Math.min(len, 0x10000L));
+        long remaining = len;
+        while (remaining > 0L) {
+            final int position = input.position;
+            final int avail = input.limit - position;
+            if (avail > 0) {
+                final int cnt = (int) Math.min((long) Math.min(avail, chars.length), remaining);
+                final long res = decode(buffer, position, position + cnt, chars, 0);
+                final int i = (int) (res >>> 32);
+                input.position = i;
+                builder.append(chars, 0, (int) res);
+                remaining -= i - position;
+                if (i - position == cnt) {
+                    continue;
+                }
+            }
+            // the buffer is drained, or a sequence straddles its end
+            final int a = input.readUnsignedByteDirect();
+            final int size = a < 0xc0 ? 1 : a < 0xe0 ? 2 : a < 0xf0 ? 3 : 1;
+            if (size > remaining) {
+                throw new UTFDataFormatException(MALFORMED);
+            }
+            builder.append(readUTFChar(input, a));
+            remaining -= size;
+        }
+        return builder.toString();
+    }
+
+    private static char readUTFChar(final SimpleDataInput input, final int a) throws IOException {
+        if (a < 0x80) {
+            return (char) a;
+        } else if (a < 0xc0) {
+            throw new UTFDataFormatException(INVALID_BYTE);
+        } else if (a < 0xe0) {
+            final int b = input.readUnsignedByteDirect();
+            if ((b & 0xc0) != 0x80) {
+                throw new UTFDataFormatException(INVALID_BYTE);
+            }
+            return (char) ((a & 0x1f) << 6 | b & 0x3f);
+        } else if (a < 0xf0) {
+            final int b = input.readUnsignedByteDirect();
+            if ((b & 0xc0) != 0x80) {
+                throw new UTFDataFormatException(INVALID_BYTE);
+            }
+            final int c = input.readUnsignedByteDirect();
+            if ((c & 0xc0) != 0x80) {
+                throw new UTFDataFormatException(INVALID_BYTE);
+            }
+            return (char) ((a & 0x0f) << 12 | (b & 0x3f) << 6 | c & 0x3f);
+        } else {
+            throw new UTFDataFormatException(INVALID_BYTE);
+        }
+    }
+
     /**
      * Read a null-terminated modified UTF-8 string from the given byte input.  Bytes are read until a 0 is found or
      * until the end of the stream, whichever comes first.
@@ -21,6 +21,9 @@ package org.jboss.marshalling;
 import java.io.InvalidObjectException;
 import java.io.ObjectInput;
 import java.io.IOException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
 
 /**
  * An unmarshaller which reads objects from a stream.
@@ -59,6 +62,31 @@ public interface Unmarshaller extends ObjectInput, ByteInput {
      */
     <T> T readObjectUnshared(Class<T> type) throws ClassNotFoundException, IOException;
 
+    /**
+     * Read a collection or map and return an iterator over its members, which are {@link Map.Entry} instances in the
+     * case of a map.  Implementations may read each member from the stream only when it is requested, without ever
+     * constructing the collection itself; in that case the iterator must be exhausted before anything else is read
+     * from this unmarshaller, and any exception it encounters is rethrown as an {@link java.io.UncheckedIOException}.
+     * <p>
+     * The default implementation reads the whole object and iterates over it.
+     *
+     * @return an iterator over the collection or map members
+     * @throws ClassNotFoundException if the class of a serialized object cannot be found
+     * @throws InvalidObjectException if the object is not a collection or map
+     * @throws IOException if an error occurs
+     */
+    @SuppressWarnings({ "unchecked" })
+    default Iterator<Object> readCollectionStream() throws ClassNotFoundException, IOException {
+        final Object obj = readObject();
+        if (obj instanceof Collection) {
+            return ((Collection<Object>) obj).iterator();
+        } else if (obj instanceof Map) {
+            return (Iterator) ((Map<?, ?>) obj).entrySet().iterator();
+        } else {
+            throw new InvalidObjectException("Expected a collection or map, but read " + (obj == null ? "null" : obj.getClass().getName()));
+        }
+    }
+
     /**
      * Begin unmarshalling from a stream.
      *
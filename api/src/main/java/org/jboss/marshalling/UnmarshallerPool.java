@@ -0,0 +1,92 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.marshalling;
+
+import java.io.IOException;
+
+/**
+ * A thread-safe pool of unmarshallers which share one configuration.  The pool grows on demand: {@link #acquire()}
+ * creates a new unmarshaller whenever no idle one is available.  It shrinks by discarding released unmarshallers
+ * once the number of idle ones reaches the configured maximum.
+ * <p>
+ * An unmarshaller must be finished before it is released.  Its class cache is cleared on release, so every acquired
+ * unmarshaller starts out in the same state as a new one.
+ */
+public final class UnmarshallerPool {
+    private final MarshallerFactory factory;
+    private final MarshallingConfiguration configuration;
+    private final IdleQueue<Unmarshaller> idle;
+
+    /**
+     * Construct a new instance.
+     *
+     * @param factory the factory to create unmarshallers with
+     * @param configuration the configuration for new unmarshallers (copied)
+     * @param maxIdle the maximum number of idle unmarshallers to retain
+     */
+    public UnmarshallerPool(final MarshallerFactory factory, final MarshallingConfiguration configuration, final int maxIdle) {
+        if (factory == null) {
+            throw new IllegalArgumentException("factory is null");
+        }
+        if (configuration == null) {
+            throw new IllegalArgumentException("configuration is null");
+        }
+        this.factory = factory;
+        this.configuration = configuration.clone();
+        idle = new IdleQueue<Unmarshaller>(maxIdle);
+    }
+
+    /**
+     * Get an idle unmarshaller from the pool, or create a new one if none is idle.
+     *
+     * @return the unmarshaller
+     * @throws IOException if a new unmarshaller could not be created
+     */
+    public Unmarshaller acquire() throws IOException {
+        final Unmarshaller unmarshaller = idle.poll();
+        if (unmarshaller != null) {
+            return unmarshaller;
+        }
+        return factory.createUnmarshaller(configuration);
+    }
+
+    /**
+     * Return a finished unmarshaller to the pool.  If the pool already holds its maximum number of idle
+     * unmarshallers, the given one is discarded.
+     *
+     * @param unmarshaller the unmarshaller, which must have been acquired from this pool
+     * @throws IOException if the unmarshaller could not be reset
+     */
+    public void release(final Unmarshaller unmarshaller) throws IOException {
+        if (unmarshaller == null) {
+            return;
+        }
+        unmarshaller.clearClassCache();
+        idle.offer(unmarshaller);
+    }
+
+    /**
+     * Get the number of idle unmarshallers currently held by the pool.
+     *
+     * @return the number of idle unmarshallers
+     */
+    public int getIdleCount() {
+        return idle.size();
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.marshalling.reflect;
+
+/**
+ * Reads and writes the value of one instance field.  The implementation for a field is chosen by
+ * {@code JDKSpecific.newFieldAccessor(Field)}.  No checks are done here: callers must make sure that the instance is of
+ * the declaring class, that the method matches the field type and that a value set into an object field is of the field
+ * type.  Use the checked methods of {@link SerializableField} where the types are not already known.
+ */
+public abstract class FieldAccessor {
+
+    FieldAccessor() {
+    }
+
+    public abstract boolean getBoolean(Object instance);
+
+    public abstract char getChar(Object instance);
+
+    public abstract byte getByte(Object instance);
+
+    public abstract short getShort(Object instance);
+
+    public abstract int getInt(Object instance);
+
+    public abstract long getLong(Object instance);
+
+    public abstract float getFloat(Object instance);
+
+    public abstract double getDouble(Object instance);
+
+    public abstract Object getObject(Object instance);
+
+    public abstract void setBoolean(Object instance, boolean value);
+
+    public abstract void setChar(Object instance, char value);
+
+    public abstract void setByte(Object instance, byte value);
+
+    public abstract void setShort(Object instance, short value);
+
+    public abstract void setInt(Object instance, int value);
+
+    public abstract void setLong(Object instance, long value);
+
+    public abstract void setFloat(Object instance, float value);
+
+    public abstract void setDouble(Object instance, double value);
+
+    public abstract void setObject(Object instance, Object value);
+}
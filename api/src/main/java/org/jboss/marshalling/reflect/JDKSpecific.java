@@ -28,6 +28,7 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.ObjectStreamException;
 import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
@@ -61,6 +62,10 @@ final class JDKSpecific {
         return serCtor;
     }
 
+    static FieldAccessor newFieldAccessor(Field field) {
+        return new UnsafeFieldAccessor(field);
+    }
+
     static final class SerMethods {
         private final Method readObject;
         private final Method readObjectNoData;
@@ -0,0 +1,194 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.marshalling.reflect;
+
+import java.lang.reflect.Field;
+
+/**
+ * A field accessor which uses core reflection, for fields which can be reached neither by a {@code VarHandle} nor by
+ * {@code sun.misc.Unsafe}.  If the field cannot be made accessible, every access fails with an exception which names
+ * the field.
+ */
+final class ReflectionFieldAccessor extends FieldAccessor {
+    private final Field field;
+    private final RuntimeException inaccessible;
+
+    ReflectionFieldAccessor(final Field field) {
+        this.field = field;
+        RuntimeException inaccessible = null;
+        try {
+            field.setAccessible(true);
+        } catch (RuntimeException e) {
+            inaccessible = e;
+        }
+        this.inaccessible = inaccessible;
+    }
+
+    private IllegalStateException cannotAccess(final IllegalAccessException e) {
+        final IllegalStateException ise = new IllegalStateException("Cannot access field \"" + field.getName() + "\" of " + field.getDeclaringClass().getName(), inaccessible == null ? e : inaccessible);
+        if (inaccessible != null) {
+            ise.addSuppressed(e);
+        }
+        return ise;
+    }
+
+    public boolean getBoolean(final Object instance) {
+        try {
+            return field.getBoolean(instance);
+        } catch (IllegalAccessException e) {
+            throw cannotAccess(e);
+        }
+    }
+
+    public char getChar(final Object instance) {
+        try {
+            return field.getChar(instance);
+        } catch (IllegalAccessException e) {
+            throw cannotAccess(e);
+        }
+    }
+
+    public byte getByte(final Object instance) {
+        try {
+            return field.getByte(instance);
+        } catch (IllegalAccessException e) {
+            throw cannotAccess(e);
+        }
+    }
+
+    public short getShort(final Object instance) {
+        try {
+            return field.getShort(instance);
+        } catch (IllegalAccessException e) {
+            throw cannotAccess(e);
+        }
+    }
+
+    public int getInt(final Object instance) {
+        try {
+            return field.getInt(instance);
+        } catch (IllegalAccessException e) {
+            throw cannotAccess(e);
+        }
+    }
+
+    public long getLong(final Object instance) {
+        try {
+            return field.getLong(instance);
+        } catch (IllegalAccessException e) {
+            throw cannotAccess(e);
+        }
+    }
+
+    public float getFloat(final Object instance) {
+        try {
+            return field.getFloat(instance);
+        } catch (IllegalAccessException e) {
+            throw cannotAccess(e);
+        }
+    }
+
+    public double getDouble(final Object instance) {
+        try {
+            return field.getDouble(instance);
+        } catch (IllegalAccessException e) {
+            throw cannotAccess(e);
+        }
+    }
+
+    public Object getObject(final Object instance) {
+        try {
+            return field.get(instance);
+        } catch (IllegalAccessException e) {
+            throw cannotAccess(e);
+        }
+    }
+
+    public void setBoolean(final Object instance, final boolean value) {
+        try {
+            field.setBoolean(instance, value);
+        } catch (IllegalAccessException e) {
+            throw cannotAccess(e);
+        }
+    }
+
+    public void setChar(final Object instance, final char value) {
+        try {
+            field.setChar(instance, value);
+        } catch (IllegalAccessException e) {
+            throw cannotAccess(e);
+        }
+    }
+
+    public void setByte(final Object instance, final byte value) {
+        try {
+            field.setByte(instance, value);
+        } catch (IllegalAccessException e) {
+            throw cannotAccess(e);
+        }
+    }
+
+    public void setShort(final Object instance, final short value) {
+        try {
+            field.setShort(instance, value);
+        } catch (IllegalAccessException e) {
+            throw cannotAccess(e);
+        }
+    }
+
+    public void setInt(final Object instance, final int value) {
+        try {
+            field.setInt(instance, value);
+        } catch (IllegalAccessException e) {
+            throw cannotAccess(e);
+        }
+    }
+
+    public void setLong(final Object instance, final long value) {
+        try {
+            field.setLong(instance, value);
+        } catch (IllegalAccessException e) {
+            throw cannotAccess(e);
+        }
+    }
+
+    public void setFloat(final Object instance, final float value) {
+        try {
+            field.setFloat(instance, value);
+        } catch (IllegalAccessException e) {
+            throw cannotAccess(e);
+        }
+    }
+
+    public void setDouble(final Object instance, final double value) {
+        try {
+            field.setDouble(instance, value);
+        } catch (IllegalAccessException e) {
+            throw cannotAccess(e);
+        }
+    }
+
+    public void setObject(final Object instance, final Object value) {
+        try {
+            field.set(instance, value);
+        } catch (IllegalAccessException e) {
+            throw cannotAccess(e);
+        }
+    }
+}
@@ -53,6 +53,8 @@ public final class SerializableClass {
     private static final Unsafe unsafe = getSecurityManager() == null ? GetUnsafeAction.INSTANCE.run() : doPrivileged(GetUnsafeAction.INSTANCE);
     private static final SerializableClassRegistry REGISTRY = SerializableClassRegistry.getInstanceUnchecked();
     private final IdentityHashMap<Class<?>, Constructor<?>> nonInitConstructors;
+    // true if instances whose first non-serializable superclass is Object can be allocated without a constructor call
+    private final boolean allocatable;
     private final Class<?> subject;
     private final JDKSpecific.SerMethods serMethods;
     private final SerializableField[] fields;
@@ -80,6 +82,7 @@ public final class SerializableClass {
             }
         }
         nonInitConstructors = constructorMap;
+        allocatable = constructorMap.containsKey(Object.class) && isAllocatable(subject);
         // private methods
         serMethods = new JDKSpecific.SerMethods(subject);
         final ObjectStreamClass objectStreamClass = ObjectStreamClass.lookup(subject);
@@ -97,6 +100,21 @@ public final class SerializableClass {
         }
     }
 
+    private static boolean isAllocatable(Class<?> clazz) {
+        if ((clazz.getModifiers() & (Modifier.ABSTRACT | Modifier.INTERFACE)) != 0 || clazz.isArray() || clazz.isPrimitive()) {
+            return false;
+        }
+        // finalizers are registered by the Object constructor, so finalizable classes must still call it
+        for (Class<?> t = clazz; t != Object.class && t != null; t = t.getSuperclass()) {
+            try {
+                t.getDeclaredMethod("finalize");
+                return false;
+            } catch (NoSuchMethodException ignored) {
+            }
+        }
+        return true;
+    }
+
     private static SerializableField[] getSerializableFields(Class<?> clazz) {
         final Field[] declaredFields = clazz.getDeclaredFields();
         final ObjectStreamField[] objectStreamFields = getDeclaredSerialPersistentFields(clazz);
@@ -337,6 +355,14 @@ public final class SerializableClass {
      * @return the new instance
      */
     public Object callNonInitConstructor(Class<?> target) {
+        if (target == Object.class && allocatable) {
+            // the Object constructor does nothing, so allocating the instance directly is equivalent
+            try {
+                return unsafe.allocateInstance(subject);
+            } catch (InstantiationException e) {
+                throw new IllegalStateException("Instantiation failed unexpectedly");
+            }
+        }
         return invokeConstructorNoException(nonInitConstructors.get(target));
     }
 
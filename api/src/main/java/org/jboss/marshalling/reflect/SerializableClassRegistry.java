@@ -35,7 +35,7 @@ public final class SerializableClassRegistry {
 
     private static final SerializableClassRegistry INSTANCE = new SerializableClassRegistry();
 
-    private static final SerializablePermission PERMISSION = new SerializablePermission("allowSerializationReflection");
+    static final SerializablePermission PERMISSION = new SerializablePermission("allowSerializationReflection");
 
     /**
      * Get the serializable class registry instance, if allowed by the current security manager.  The caller must have
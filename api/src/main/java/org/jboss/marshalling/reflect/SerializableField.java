@@ -18,32 +18,25 @@
 
 package org.jboss.marshalling.reflect;
 
-import static java.lang.System.getSecurityManager;
-import static java.security.AccessController.doPrivileged;
-
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 
-import org.jboss.marshalling._private.GetUnsafeAction;
 import org.jboss.marshalling.util.Kind;
-import sun.misc.Unsafe;
 
 /**
  * Reflection information about a field on a serializable class.
  */
 public final class SerializableField {
-    static final Unsafe unsafe = getSecurityManager() == null ? GetUnsafeAction.INSTANCE.run() : doPrivileged(GetUnsafeAction.INSTANCE);
-
     // the type of the field itself
     private final Class<?> type;
     private final Field field;
     private final String name;
     private final boolean unshared;
     private final Kind kind;
-    private final long fieldOffset;
+    private final FieldAccessor accessor;
 
     public SerializableField(Class<?> type, String name, boolean unshared) {
         this(type, name, unshared, null);
@@ -55,7 +48,7 @@ public final class SerializableField {
         this.name = name;
         this.unshared = unshared;
         this.field = field;
-        fieldOffset = field == null ? -1 : unsafe.objectFieldOffset(field);
+        accessor = field == null ? null : JDKSpecific.newFieldAccessor(field);
         if (field != null) {
             // verify field information
             if (field.getType() != type) {
@@ -98,6 +91,21 @@ public final class SerializableField {
         return field;
     }
 
+    /**
+     * Get the unchecked accessor for the field, for callers which check the instance and value types themselves and
+     * access the same field many times.
+     *
+     * @return the accessor, or {@code null} if this object has no reflection field set on it
+     * @throws SecurityException if the caller does not have sufficient privileges
+     */
+    public FieldAccessor getAccessor() throws SecurityException {
+        final SecurityManager manager = System.getSecurityManager();
+        if (manager != null) {
+            manager.checkPermission(SerializableClassRegistry.PERMISSION);
+        }
+        return accessor;
+    }
+
     /**
      * Determine if this object may be used to get or set an object field value.
      *
@@ -162,7 +170,7 @@ public final class SerializableField {
         if (field.getType() != boolean.class) {
             throw new ClassCastException();
         }
-        unsafe.putBoolean(instance, fieldOffset, value);
+        accessor.setBoolean(instance, value);
     }
 
     /**
@@ -184,7 +192,7 @@ public final class SerializableField {
         if (field.getType() != char.class) {
             throw new ClassCastException();
         }
-        unsafe.putChar(instance, fieldOffset, value);
+        accessor.setChar(instance, value);
     }
 
     /**
@@ -206,7 +214,7 @@ public final class SerializableField {
         if (field.getType() != byte.class) {
             throw new ClassCastException();
         }
-        unsafe.putByte(instance, fieldOffset, value);
+        accessor.setByte(instance, value);
     }
 
     /**
@@ -228,7 +236,7 @@ public final class SerializableField {
         if (field.getType() != short.class) {
             throw new ClassCastException();
         }
-        unsafe.putShort(instance, fieldOffset, value);
+        accessor.setShort(instance, value);
     }
 
     /**
@@ -250,7 +258,7 @@ public final class SerializableField {
         if (field.getType() != int.class) {
             throw new ClassCastException();
         }
-        unsafe.putInt(instance, fieldOffset, value);
+        accessor.setInt(instance, value);
     }
 
     /**
@@ -272,7 +280,7 @@ public final class SerializableField {
         if (field.getType() != long.class) {
             throw new ClassCastException();
         }
-        unsafe.putLong(instance, fieldOffset, value);
+        accessor.setLong(instance, value);
     }
 
     /**
@@ -294,7 +302,7 @@ public final class SerializableField {
         if (field.getType() != float.class) {
             throw new ClassCastException();
         }
-        unsafe.putFloat(instance, fieldOffset, value);
+        accessor.setFloat(instance, value);
     }
 
     /**
@@ -316,7 +324,7 @@ public final class SerializableField {
         if (field.getType() != double.class) {
             throw new ClassCastException();
         }
-        unsafe.putDouble(instance, fieldOffset, value);
+        accessor.setDouble(instance, value);
     }
 
     /**
@@ -340,7 +348,7 @@ public final class SerializableField {
             throw new ClassCastException();
         }
         fieldType.cast(value);
-        unsafe.putObject(instance, fieldOffset, value);
+        accessor.setObject(instance, value);
     }
 
     /**
@@ -362,7 +370,7 @@ public final class SerializableField {
         if (field.getType() != boolean.class) {
             throw new ClassCastException();
         }
-        return unsafe.getBoolean(instance, fieldOffset);
+        return accessor.getBoolean(instance);
     }
 
     /**
@@ -384,7 +392,7 @@ public final class SerializableField {
         if (field.getType() != char.class) {
             throw new ClassCastException();
         }
-        return unsafe.getChar(instance, fieldOffset);
+        return accessor.getChar(instance);
     }
 
     /**
@@ -406,7 +414,7 @@ public final class SerializableField {
         if (field.getType() != byte.class) {
             throw new ClassCastException();
         }
-        return unsafe.getByte(instance, fieldOffset);
+        return accessor.getByte(instance);
     }
 
     /**
@@ -428,7 +436,7 @@ public final class SerializableField {
         if (field.getType() != short.class) {
             throw new ClassCastException();
         }
-        return unsafe.getShort(instance, fieldOffset);
+        return accessor.getShort(instance);
     }
 
     /**
@@ -450,7 +458,7 @@ public final class SerializableField {
         if (field.getType() != int.class) {
             throw new ClassCastException();
         }
-        return unsafe.getInt(instance, fieldOffset);
+        return accessor.getInt(instance);
     }
 
     /**
@@ -472,7 +480,7 @@ public final class SerializableField {
         if (field.getType() != long.class) {
             throw new ClassCastException();
         }
-        return unsafe.getLong(instance, fieldOffset);
+        return accessor.getLong(instance);
     }
 
     /**
@@ -494,7 +502,7 @@ public final class SerializableField {
         if (field.getType() != float.class) {
             throw new ClassCastException();
         }
-        return unsafe.getFloat(instance, fieldOffset);
+        return accessor.getFloat(instance);
     }
 
     /**
@@ -516,7 +524,7 @@ public final class SerializableField {
         if (field.getType() != double.class) {
             throw new ClassCastException();
         }
-        return unsafe.getDouble(instance, fieldOffset);
+        return accessor.getDouble(instance);
     }
 
     /**
@@ -538,7 +546,7 @@ public final class SerializableField {
         if (field.getType().isPrimitive()) {
             throw new ClassCastException();
         }
-        return unsafe.getObject(instance, fieldOffset);
+        return accessor.getObject(instance);
     }
 
     /**
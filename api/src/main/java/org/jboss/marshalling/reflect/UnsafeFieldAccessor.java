@@ -0,0 +1,112 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.marshalling.reflect;
+
+import static java.lang.System.getSecurityManager;
+import static java.security.AccessController.doPrivileged;
+
+import java.lang.reflect.Field;
+
+import org.jboss.marshalling._private.GetUnsafeAction;
+import sun.misc.Unsafe;
+
+/**
+ * A field accessor which uses {@code sun.misc.Unsafe} field offsets.
+ */
+final class UnsafeFieldAccessor extends FieldAccessor {
+    private static final Unsafe unsafe = getSecurityManager() == null ? GetUnsafeAction.INSTANCE.run() : doPrivileged(GetUnsafeAction.INSTANCE);
+
+    private final long fieldOffset;
+
+    UnsafeFieldAccessor(final Field field) {
+        fieldOffset = unsafe.objectFieldOffset(field);
+    }
+
+    public boolean getBoolean(final Object instance) {
+        return unsafe.getBoolean(instance, fieldOffset);
+    }
+
+    public char getChar(final Object instance) {
+        return unsafe.getChar(instance, fieldOffset);
+    }
+
+    public byte getByte(final Object instance) {
+        return unsafe.getByte(instance, fieldOffset);
+    }
+
+    public short getShort(final Object instance) {
+        return unsafe.getShort(instance, fieldOffset);
+    }
+
+    public int getInt(final Object instance) {
+        return unsafe.getInt(instance, fieldOffset);
+    }
+
+    public long getLong(final Object instance) {
+        return unsafe.getLong(instance, fieldOffset);
+    }
+
+    public float getFloat(final Object instance) {
+        return unsafe.getFloat(instance, fieldOffset);
+    }
+
+    public double getDouble(final Object instance) {
+        return unsafe.getDouble(instance, fieldOffset);
+    }
+
+    public Object getObject(final Object instance) {
+        return unsafe.getObject(instance, fieldOffset);
+    }
+
+    public void setBoolean(final Object instance, final boolean value) {
+        unsafe.putBoolean(instance, fieldOffset, value);
+    }
+
+    public void setChar(final Object instance, final char value) {
+        unsafe.putChar(instance, fieldOffset, value);
+    }
+
+    public void setByte(final Object instance, final byte value) {
+        unsafe.putByte(instance, fieldOffset, value);
+    }
+
+    public void setShort(final Object instance, final short value) {
+        unsafe.putShort(instance, fieldOffset, value);
+    }
+
+    public void setInt(final Object instance, final int value) {
+        unsafe.putInt(instance, fieldOffset, value);
+    }
+
+    public void setLong(final Object instance, final long value) {
+        unsafe.putLong(instance, fieldOffset, value);
+    }
+
+    public void setFloat(final Object instance, final float value) {
+        unsafe.putFloat(instance, fieldOffset, value);
+    }
+
+    public void setDouble(final Object instance, final double value) {
+        unsafe.putDouble(instance, fieldOffset, value);
+    }
+
+    public void setObject(final Object instance, final Object value) {
+        unsafe.putObject(instance, fieldOffset, value);
+    }
+}
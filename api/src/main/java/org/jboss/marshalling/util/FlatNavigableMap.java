@@ -34,7 +34,7 @@ import java.util.SortedMap;
  */
 public final class FlatNavigableMap<K, V> extends AbstractMap<K, V> implements NavigableMap<K, V> {
     private final Comparator<? super K> comparator;
-    private final List<Entry<K, V>> entries = new ArrayList<Entry<K, V>>();
+    private final List<Entry<K, V>> entries;
     private final Set<Entry<K, V>> entrySet = new AbstractSet<Entry<K, V>>() {
         public Iterator<Entry<K, V>> iterator() {
             return entries.iterator();
@@ -52,6 +52,12 @@ public final class FlatNavigableMap<K, V> extends AbstractMap<K, V> implements N
 
     public FlatNavigableMap(final Comparator<? super K> comparator) {
         this.comparator = comparator;
+        entries = new ArrayList<Entry<K, V>>();
+    }
+
+    public FlatNavigableMap(final Comparator<? super K> comparator, final int initialCapacity) {
+        this.comparator = comparator;
+        entries = new ArrayList<Entry<K, V>>(initialCapacity);
     }
 
     public Comparator<? super K> comparator() {
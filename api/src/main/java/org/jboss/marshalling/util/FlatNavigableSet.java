@@ -31,10 +31,16 @@ import java.util.SortedSet;
  */
 public final class FlatNavigableSet<E> extends AbstractSet<E> implements NavigableSet<E> {
     private final Comparator<? super E> comparator;
-    private final List<E> entries = new ArrayList<E>();
+    private final List<E> entries;
 
     public FlatNavigableSet(final Comparator<? super E> comparator) {
         this.comparator = comparator;
+        entries = new ArrayList<E>();
+    }
+
+    public FlatNavigableSet(final Comparator<? super E> comparator, final int initialCapacity) {
+        this.comparator = comparator;
+        entries = new ArrayList<E>(initialCapacity);
     }
 
     public Comparator<? super E> comparator() {
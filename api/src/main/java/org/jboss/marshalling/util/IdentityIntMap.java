@@ -18,24 +18,32 @@
 
 package org.jboss.marshalling.util;
 
-import java.security.AccessController;
-import java.security.PrivilegedAction;
 import java.util.Arrays;
 
 /**
  * An efficient identity object map whose keys are objects and whose values are {@code int}s.
+ * <p>
+ * Keys are placed by linear probing from a Fibonacci-mixed identity hash, which is computed once per operation and
+ * cached alongside the key so that growing the table never recomputes it.  The occupied slots are also recorded in
+ * insertion order, so clearing the map costs time proportional to the number of entries rather than to its capacity.
+ * Capacity is retained across {@link #clear()} calls while recent use justifies it, and released once the map has been
+ * mostly empty for several clears in a row.
  */
 public final class IdentityIntMap<T> implements Cloneable {
 
-    private static final int DEFAULT_REINITIALIZE_CAPACITY_THRESHOLD = 1 << 16; // 65536
-    private static final int REINITIALIZE_CAPACITY_THRESHOLD = AccessController.doPrivileged((PrivilegedAction<Integer>) () -> {
-        return Integer.getInteger("jboss.marshalling.identityint.reinitialize.capacity.threshold", DEFAULT_REINITIALIZE_CAPACITY_THRESHOLD);
-    });
+    private static final int GOLDEN = 0x9e3779b9;
 
-    private int[] values;
     private Object[] keys;
+    private int[] values;
+    // the identity hash of each key, by slot
+    private int[] hashes;
+    // the occupied slots, in insertion order
+    private int[] slots;
     private int count;
     private int resizeCount;
+    private int shift;
+    // slowly decaying peak count seen by clear()
+    private int peak;
 
     private final int initialCapacity;
     private final float loadFactor;
@@ -62,13 +70,16 @@ public final class IdentityIntMap<T> implements Cloneable {
         }
         this.initialCapacity = initialCapacity;
         this.loadFactor = loadFactor;
-        init();
+        init(initialCapacity);
     }
 
-    private void init() {
-        keys = new Object[initialCapacity];
-        values = new int[initialCapacity];
-        resizeCount = (int) ((double) initialCapacity * (double) loadFactor);
+    private void init(final int capacity) {
+        keys = new Object[capacity];
+        values = new int[capacity];
+        hashes = new int[capacity];
+        resizeCount = (int) ((double) capacity * (double) loadFactor);
+        slots = new int[resizeCount + 1];
+        shift = Integer.numberOfLeadingZeros(capacity) + 1;
     }
 
     /**
@@ -82,6 +93,8 @@ public final class IdentityIntMap<T> implements Cloneable {
             final IdentityIntMap<T> clone = (IdentityIntMap<T>) super.clone();
             clone.values = values.clone();
             clone.keys = keys.clone();
+            clone.hashes = hashes.clone();
+            clone.slots = slots.clone();
             return clone;
         } catch (CloneNotSupportedException e) {
             throw new IllegalStateException();
@@ -123,18 +136,18 @@ public final class IdentityIntMap<T> implements Cloneable {
     public int get(T key, int defVal) {
         final Object[] keys = this.keys;
         final int mask = keys.length - 1;
-        int hc = System.identityHashCode(key) & mask;
+        int idx = System.identityHashCode(key) * GOLDEN >>> shift;
         Object v;
         for (;;) {
-            v = keys[hc];
+            v = keys[idx];
             if (v == key) {
-                return values[hc];
+                return values[idx];
             }
             if (v == null) {
                 // not found
                 return defVal;
             }
-            hc = (hc + 1) & mask;
+            idx = idx + 1 & mask;
         }
     }
 
@@ -147,14 +160,16 @@ public final class IdentityIntMap<T> implements Cloneable {
     public void put(T key, int value) {
         final Object[] keys = this.keys;
         final int mask = keys.length - 1;
-        final int[] values = this.values;
+        final int hash = System.identityHashCode(key);
+        int idx = hash * GOLDEN >>> shift;
         Object v;
-        int hc = System.identityHashCode(key) & mask;
-        for (int idx = hc;; idx = hc++ & mask) {
+        for (;;) {
             v = keys[idx];
             if (v == null) {
                 keys[idx] = key;
                 values[idx] = value;
+                hashes[idx] = hash;
+                slots[count] = idx;
                 if (++count > resizeCount) {
                     resize();
                 }
@@ -164,51 +179,107 @@ public final class IdentityIntMap<T> implements Cloneable {
                 values[idx] = value;
                 return;
             }
+            idx = idx + 1 & mask;
         }
     }
 
     private void resize() {
-        final Object[] oldKeys = keys;
-        final int oldsize = oldKeys.length;
-        final int[] oldValues = values;
+        final int oldsize = keys.length;
         if (oldsize >= 0x40000000) {
             throw new IllegalStateException("Table full");
         }
-        final int newsize = oldsize << 1;
+        rehash(oldsize << 1);
+    }
+
+    private void rehash(final int newsize) {
+        final Object[] oldKeys = keys;
+        final int[] oldValues = values;
+        final int[] oldHashes = hashes;
+        final int[] oldSlots = slots;
+        final int count = this.count;
+        init(newsize);
+        final Object[] newKeys = keys;
+        final int[] newValues = values;
+        final int[] newHashes = hashes;
+        final int[] newSlots = slots;
         final int mask = newsize - 1;
-        final Object[] newKeys = new Object[newsize];
-        final int[] newValues = new int[newsize];
-        keys = newKeys;
-        values = newValues;
-        if ((resizeCount <<= 1) == 0) {
-            resizeCount = Integer.MAX_VALUE;
+        final int shift = this.shift;
+        for (int i = 0; i < count; i ++) {
+            final int oi = oldSlots[i];
+            final int hash = oldHashes[oi];
+            int ni = hash * GOLDEN >>> shift;
+            while (newKeys[ni] != null) {
+                ni = ni + 1 & mask;
+            }
+            newKeys[ni] = oldKeys[oi];
+            newValues[ni] = oldValues[oi];
+            newHashes[ni] = hash;
+            newSlots[i] = ni;
         }
-        for (int oi = 0; oi < oldsize; oi ++) {
-            final Object key = oldKeys[oi];
-            if (key != null) {
-                int ni = System.identityHashCode(key) & mask;
-                for (;;) {
-                    final Object v = newKeys[ni];
-                    if (v == null) {
-                        // found
-                        newKeys[ni] = key;
-                        newValues[ni] = oldValues[oi];
-                        break;
-                    }
-                    ni = (ni + 1) & mask;
-                }
+    }
+
+    /**
+     * Get the number of mappings in this map.
+     *
+     * @return the number of mappings
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Roll this map back to the first {@code size} mappings which were added, discarding the rest.  Since values are
+     * replaced in place, a retained mapping may have been given a new value since; any retained value of {@code limit}
+     * or more is changed to {@code defVal}.
+     *
+     * @param size the number of mappings to keep
+     * @param limit the lowest value which may not be retained
+     * @param defVal the value to give retained mappings at or above the limit
+     */
+    public void truncate(final int size, final int limit, final int defVal) {
+        final int count = this.count;
+        if (size < 0 || size > count) {
+            throw new IllegalArgumentException("size is out of range");
+        }
+        final Object[] keys = this.keys;
+        final int[] values = this.values;
+        final int[] slots = this.slots;
+        // a later key never lies on the probe path of an earlier one, so dropping the latest keys needs no rehash
+        for (int i = size; i < count; i ++) {
+            keys[slots[i]] = null;
+        }
+        this.count = size;
+        for (int i = 0; i < size; i ++) {
+            final int slot = slots[i];
+            if (values[slot] >= limit) {
+                values[slot] = defVal;
             }
         }
     }
 
+    /**
+     * Remove all mappings from this map.  The table keeps its capacity as long as recent use justifies it.
+     */
     public void clear() {
-        if (keys.length > REINITIALIZE_CAPACITY_THRESHOLD) {
-            // Reinitialize arrays if keys.length exceeds threshold
-            init();
+        final int count = this.count;
+        this.count = 0;
+        final int peak = this.peak = Math.max(count, this.peak - (this.peak >>> 2));
+        // smallest capacity which would hold the recent peak without resizing
+        int wanted = initialCapacity;
+        while (wanted < 0x40000000 && (int) ((double) wanted * (double) loadFactor) < peak) {
+            wanted <<= 1;
+        }
+        if (keys.length >= wanted << 2) {
+            init(wanted);
+        } else if (count << 3 < keys.length) {
+            final Object[] keys = this.keys;
+            final int[] slots = this.slots;
+            for (int i = 0; i < count; i ++) {
+                keys[slots[i]] = null;
+            }
         } else {
             Arrays.fill(keys, null);
         }
-        count = 0;
     }
 
     /**
@@ -222,8 +293,8 @@ public final class IdentityIntMap<T> implements Cloneable {
         for (int i = 0; i < keys.length; i ++) {
             builder.append('[').append(i).append("] = ");
             if (keys[i] != null) {
-                final int hc = System.identityHashCode(keys[i]);
-                builder.append("{ ").append(keys[i]).append(" (hash ").append(hc).append(", modulus ").append(hc % keys.length).append(") => ").append(values[i]).append(" }");
+                final int hc = hashes[i];
+                builder.append("{ ").append(keys[i]).append(" (hash ").append(hc).append(", home ").append(hc * GOLDEN >>> shift).append(") => ").append(values[i]).append(" }");
             } else {
                 builder.append("(blank)");
             }
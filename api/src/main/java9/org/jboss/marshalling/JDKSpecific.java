@@ -23,6 +23,9 @@ import static java.security.AccessController.doPrivileged;
 import static sun.reflect.ReflectionFactory.getReflectionFactory;
 
 import java.io.OptionalDataException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
 import java.security.PrivilegedAction;
 import java.util.Iterator;
 import java.util.function.Function;
@@ -83,4 +86,36 @@ final class JDKSpecific {
     static Class<?> getMyCaller() {
         return stackWalker.walk(callerFinder);
     }
+
+    static void onSpinWait() {
+        Thread.onSpinWait();
+    }
+
+    private static final VarHandle SHORT_VIEW = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle INT_VIEW = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle LONG_VIEW = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    static void putShort(final byte[] b, final int off, final int v) {
+        SHORT_VIEW.set(b, off, (short) v);
+    }
+
+    static short getShort(final byte[] b, final int off) {
+        return (short) SHORT_VIEW.get(b, off);
+    }
+
+    static void putInt(final byte[] b, final int off, final int v) {
+        INT_VIEW.set(b, off, v);
+    }
+
+    static int getInt(final byte[] b, final int off) {
+        return (int) INT_VIEW.get(b, off);
+    }
+
+    static void putLong(final byte[] b, final int off, final long v) {
+        LONG_VIEW.set(b, off, v);
+    }
+
+    static long getLong(final byte[] b, final int off) {
+        return (long) LONG_VIEW.get(b, off);
+    }
 }
@@ -29,6 +29,7 @@ import java.io.ObjectOutputStream;
 import java.io.ObjectStreamException;
 import java.lang.invoke.MethodHandle;
 import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
 import java.lang.reflect.UndeclaredThrowableException;
 import java.security.PrivilegedAction;
 import sun.reflect.ReflectionFactory;
@@ -44,6 +45,44 @@ final class JDKSpecific {
         public ReflectionFactory run() { return ReflectionFactory.getReflectionFactory(); }
     });
 
+    // whether the JDK denies sun.misc.Unsafe memory access, which includes looking up field offsets
+    private static final boolean unsafeDenied = "deny".equals(getSecurityManager() == null ? System.getProperty("sun.misc.unsafe.memory.access") : doPrivileged(new PrivilegedAction<String>() {
+        public String run() { return System.getProperty("sun.misc.unsafe.memory.access"); }
+    }));
+
+    // use VarHandles rather than Unsafe field offsets only where the JDK denies Unsafe memory access, or when asked to
+    private static final boolean varHandleFields = getSecurityManager() == null ? useVarHandleFields() : doPrivileged(new PrivilegedAction<Boolean>() {
+        public Boolean run() { return Boolean.valueOf(useVarHandleFields()); }
+    }).booleanValue();
+
+    private static boolean useVarHandleFields() {
+        final String accessor = System.getProperty("jboss.marshalling.field.accessor");
+        if (accessor != null) {
+            return accessor.equalsIgnoreCase("varhandle");
+        }
+        // Unsafe is much faster, so merely warning about it (the default from Java 24) is not enough to switch
+        return unsafeDenied;
+    }
+
+    static FieldAccessor newFieldAccessor(Field field) {
+        return newFieldAccessor(field, varHandleFields, unsafeDenied);
+    }
+
+    // split out so that the choice can be tested without denying Unsafe to the whole JVM
+    static FieldAccessor newFieldAccessor(Field field, boolean varHandleFields, boolean unsafeDenied) {
+        if (varHandleFields) {
+            final FieldAccessor accessor = VarHandleFieldAccessor.create(field);
+            if (accessor != null) {
+                return accessor;
+            }
+        }
+        if (unsafeDenied) {
+            // Unsafe cannot even find the field offset, so reflection is all that is left
+            return new ReflectionFieldAccessor(field);
+        }
+        return new UnsafeFieldAccessor(field);
+    }
+
     static Constructor<?> newConstructorForSerialization(Class<?> classToInstantiate, Constructor<?> constructorToCall) {
         return reflectionFactory.newConstructorForSerialization(classToInstantiate, constructorToCall);
     }
@@ -0,0 +1,83 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.marshalling;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test case for {@link ByteBufferChainInput}.
+ */
+public final class ByteBufferChainInputTestCase {
+
+    @Test
+    public void testReadAcrossSegments() throws IOException {
+        final ByteBuffer[] buffers = new ByteBuffer[] {
+            ByteBuffer.wrap(new byte[] { 0, 1, 2 }),
+            ByteBuffer.allocate(0),
+            ByteBuffer.wrap(new byte[] { 3 }),
+            ByteBuffer.wrap(new byte[] { 4, 5, 6, 7, 8, 9 }),
+        };
+        final ByteBufferChainInput input = new ByteBufferChainInput(buffers);
+        Assert.assertEquals(input.available(), 10);
+        Assert.assertEquals(input.read(), 0);
+        final byte[] result = new byte[5];
+        Assert.assertEquals(input.read(result), 5);
+        Assert.assertEquals(result, new byte[] { 1, 2, 3, 4, 5 });
+        Assert.assertEquals(input.skip(2L), 2L);
+        Assert.assertEquals(input.read(result, 0, 5), 2);
+        Assert.assertEquals(result, new byte[] { 8, 9, 3, 4, 5 });
+        Assert.assertEquals(input.read(), -1);
+        Assert.assertEquals(input.read(result), -1);
+        input.close();
+    }
+
+    @Test
+    public void testBuffersReturnedToPool() throws IOException {
+        final List<ByteBuffer> freed = new ArrayList<ByteBuffer>();
+        final ByteBufferPool pool = new ByteBufferPool() {
+            public ByteBuffer allocate() {
+                return ByteBuffer.allocate(8);
+            }
+
+            public void free(final ByteBuffer buffer) {
+                freed.add(buffer);
+            }
+        };
+        final ByteBufferChainOutput output = new ByteBufferChainOutput(pool);
+        final SimpleDataOutput dataOutput = new SimpleDataOutput(64, output);
+        dataOutput.writeInt(0x12345678);
+        dataOutput.writeUTF("hello, chained world");
+        dataOutput.writeLong(-1L);
+        dataOutput.flush();
+        final ByteBuffer[] buffers = output.take();
+        final ByteBufferChainInput input = new ByteBufferChainInput(buffers, pool);
+        final SimpleDataInput dataInput = new SimpleDataInput(4, input);
+        Assert.assertEquals(dataInput.readInt(), 0x12345678);
+        Assert.assertEquals(dataInput.readUTF(), "hello, chained world");
+        Assert.assertTrue(freed.size() > 0);
+        Assert.assertEquals(dataInput.readLong(), -1L);
+        dataInput.close();
+        Assert.assertEquals(freed.size(), buffers.length);
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.marshalling;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test case for {@link ByteBufferChainOutput}.
+ */
+public final class ByteBufferChainOutputTestCase {
+
+    @Test
+    public void testWriteAcrossSegments() throws IOException {
+        final SimpleByteBufferPool pool = new SimpleByteBufferPool(16, true, 8);
+        final ByteBufferChainOutput output = new ByteBufferChainOutput(pool);
+        final byte[] bytes = new byte[100];
+        for (int i = 0; i < bytes.length; i ++) {
+            bytes[i] = (byte) i;
+        }
+        output.write(0xff);
+        output.write(bytes, 0, bytes.length);
+        Assert.assertEquals(output.getSize(), 101L);
+
+        final ByteBuffer[] buffers = output.take();
+        Assert.assertEquals(buffers.length, 7);
+        Assert.assertEquals(output.getSize(), 0L);
+        final ByteBuffer all = ByteBuffer.allocate(101);
+        for (ByteBuffer buffer : buffers) {
+            Assert.assertTrue(buffer.isDirect());
+            all.put(buffer);
+            pool.free(buffer);
+        }
+        all.flip();
+        Assert.assertEquals(all.get(), (byte) 0xff);
+        for (int i = 0; i < bytes.length; i ++) {
+            Assert.assertEquals(all.get(), (byte) i);
+        }
+        Assert.assertEquals(output.take().length, 0);
+    }
+
+    @Test
+    public void testDataOutputToChain() throws IOException {
+        final SimpleByteBufferPool pool = new SimpleByteBufferPool(64, false, 16);
+        final ByteBufferChainOutput output = Marshalling.createByteOutput(pool);
+        final SimpleDataOutput dataOutput = new SimpleDataOutput(128, output);
+        for (int i = 0; i < 100; i ++) {
+            dataOutput.writeLong(i * 0x0101010101L);
+        }
+        dataOutput.flush();
+        Assert.assertEquals(output.getSize(), 800L);
+        final ByteBuffer[] buffers = output.take();
+        Assert.assertEquals(buffers.length, 13);
+        final ByteBuffer joined = ByteBuffer.allocate(800);
+        for (ByteBuffer buffer : buffers) {
+            joined.put(buffer);
+        }
+        joined.flip();
+        for (int i = 0; i < 100; i ++) {
+            Assert.assertEquals(joined.getLong(), i * 0x0101010101L);
+        }
+    }
+
+    @Test
+    public void testSizeAfterFailedWrite() throws IOException {
+        // a pool which has only one segment to give
+        final ByteBufferPool pool = new ByteBufferPool() {
+            private boolean allocated;
+
+            public ByteBuffer allocate() {
+                if (allocated) {
+                    throw new IllegalStateException("Pool exhausted");
+                }
+                allocated = true;
+                return ByteBuffer.allocate(16);
+            }
+
+            public void free(final ByteBuffer buffer) {
+            }
+        };
+        final ByteBufferChainOutput output = new ByteBufferChainOutput(pool);
+        try {
+            output.write(new byte[40], 0, 40);
+            Assert.fail("Missing exception");
+        } catch (IllegalStateException expected) {
+        }
+        Assert.assertEquals(output.getSize(), 16L);
+        final ByteBuffer[] buffers = output.take();
+        Assert.assertEquals(buffers.length, 1);
+        Assert.assertEquals(buffers[0].remaining(), 16);
+    }
+}
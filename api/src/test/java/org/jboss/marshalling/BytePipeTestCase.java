@@ -0,0 +1,71 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.marshalling;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test case for {@link BytePipe}.
+ */
+public final class BytePipeTestCase {
+
+    @Test
+    public void testProducerConsumer() throws Exception {
+        final BytePipe pipe = new BytePipe(100);
+        Assert.assertEquals(pipe.getCapacity(), 128);
+        final AtomicReference<Throwable> problem = new AtomicReference<Throwable>();
+        final Thread producer = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    final SimpleDataOutput output = new SimpleDataOutput(77, pipe.getOutput());
+                    for (int i = 0; i < 100000; i ++) {
+                        output.writeInt(i);
+                    }
+                    output.close();
+                } catch (Throwable t) {
+                    problem.set(t);
+                }
+            }
+        });
+        producer.start();
+        final SimpleDataInput input = new SimpleDataInput(53, pipe.getInput());
+        for (int i = 0; i < 100000; i ++) {
+            Assert.assertEquals(input.readInt(), i);
+        }
+        Assert.assertEquals(input.read(), -1);
+        producer.join();
+        Assert.assertNull(problem.get());
+    }
+
+    @Test
+    public void testWriteAfterInputClosed() throws IOException {
+        final BytePipe pipe = new BytePipe(16);
+        pipe.getOutput().write(new byte[10]);
+        pipe.getInput().close();
+        try {
+            pipe.getOutput().write(1);
+            Assert.fail("Expected exception");
+        } catch (IOException expected) {
+        }
+    }
+}
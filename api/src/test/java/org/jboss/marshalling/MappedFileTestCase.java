@@ -0,0 +1,95 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.marshalling;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test case for {@link MappedFileByteOutput} and {@link MappedFileByteInput}.
+ */
+public final class MappedFileTestCase {
+
+    @Test
+    public void testRoundTripAcrossWindows() throws IOException {
+        final File file = File.createTempFile("mapped", ".bin");
+        try {
+            final SimpleDataOutput output = new SimpleDataOutput(100, new MappedFileByteOutput(new RandomAccessFile(file, "rw").getChannel(), 1000));
+            for (int i = 0; i < 1000; i ++) {
+                output.writeInt(i);
+            }
+            output.close();
+            Assert.assertEquals(file.length(), 4000L);
+
+            final FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+            final MappedFileByteInput byteInput = new MappedFileByteInput(channel, 1000);
+            final SimpleDataInput input = new SimpleDataInput(64, byteInput);
+            for (int i = 0; i < 300; i ++) {
+                Assert.assertEquals(input.readInt(), i);
+            }
+            // skip past the end of the current window
+            Assert.assertEquals(input.skipBytes(2000), 2000);
+            for (int i = 800; i < 1000; i ++) {
+                Assert.assertEquals(input.readInt(), i);
+            }
+            Assert.assertEquals(input.read(), -1);
+            Assert.assertEquals(byteInput.getPosition(), 4000L);
+            input.close();
+            Assert.assertFalse(channel.isOpen());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testOverwriteKeepsTrailingContent() throws IOException {
+        final File file = File.createTempFile("mapped", ".bin");
+        try {
+            final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            final byte[] original = new byte[5000];
+            Arrays.fill(original, (byte) 7);
+            raf.write(original);
+            final FileChannel channel = raf.getChannel();
+            channel.position(100);
+            final MappedFileByteOutput output = new MappedFileByteOutput(channel, 1000);
+            final byte[] bytes = new byte[2500];
+            Arrays.fill(bytes, (byte) 9);
+            output.write(bytes);
+            output.force();
+            output.close();
+            Assert.assertEquals(file.length(), 5000L);
+
+            final byte[] expected = original.clone();
+            System.arraycopy(bytes, 0, expected, 100, bytes.length);
+            final byte[] actual = new byte[5000];
+            final RandomAccessFile in = new RandomAccessFile(file, "r");
+            in.readFully(actual);
+            in.close();
+            Assert.assertEquals(actual, expected);
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.marshalling;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test case for {@link MarshallerPool}.
+ */
+public final class MarshallerPoolTestCase {
+
+    @Test
+    public void testReuseAndBound() throws Exception {
+        final AtomicInteger created = new AtomicInteger();
+        final MarshallerFactory factory = new MarshallerFactory() {
+            public Unmarshaller createUnmarshaller(final MarshallingConfiguration configuration) {
+                throw new UnsupportedOperationException();
+            }
+
+            public Marshaller createMarshaller(final MarshallingConfiguration configuration) throws IOException {
+                created.incrementAndGet();
+                return new ObjectOutputStreamMarshaller(new ObjectOutputStream(new ByteArrayOutputStream()));
+            }
+        };
+        final MarshallerPool pool = new MarshallerPool(factory, new MarshallingConfiguration(), 2);
+        final Marshaller first = pool.acquire();
+        pool.release(first);
+        Assert.assertSame(pool.acquire(), first);
+        Assert.assertEquals(created.get(), 1);
+        // grow under load
+        final Marshaller[] marshallers = new Marshaller[4];
+        marshallers[0] = first;
+        for (int i = 1; i < marshallers.length; i ++) {
+            marshallers[i] = pool.acquire();
+        }
+        Assert.assertEquals(created.get(), 4);
+        // shrink back to the idle bound
+        for (Marshaller marshaller : marshallers) {
+            pool.release(marshaller);
+        }
+        Assert.assertEquals(pool.getIdleCount(), 2);
+        pool.acquire();
+        pool.acquire();
+        Assert.assertEquals(pool.getIdleCount(), 0);
+        Assert.assertEquals(created.get(), 4);
+    }
+}
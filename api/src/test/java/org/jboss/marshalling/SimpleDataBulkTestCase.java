@@ -0,0 +1,81 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.marshalling;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test case for the bulk primitive methods of {@link SimpleDataOutput} and {@link SimpleDataInput}.
+ */
+public final class SimpleDataBulkTestCase {
+
+    @Test
+    public void testBulkRoundTrip() throws IOException {
+        final int[] ints = new int[200];
+        final long[] longs = new long[200];
+        final double[] doubles = new double[200];
+        final char[] chars = new char[200];
+        for (int i = 0; i < 200; i ++) {
+            ints[i] = i * 0x01030507;
+            longs[i] = i * 0x0103050709L - 1;
+            doubles[i] = i / 3.0;
+            chars[i] = (char) (i * 331);
+        }
+        // a small odd-sized buffer forces values to straddle buffer boundaries
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final SimpleDataOutput output = new SimpleDataOutput(37, Marshalling.createByteOutput(baos));
+        output.writeByte(1);
+        output.writeInts(ints, 0, ints.length);
+        output.writeLongs(longs, 0, longs.length);
+        output.writeDoubles(doubles, 0, doubles.length);
+        output.writeChars(chars, 0, chars.length);
+        output.flush();
+
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        final DataOutputStream dos = new DataOutputStream(expected);
+        dos.writeByte(1);
+        for (int v : ints) dos.writeInt(v);
+        for (long v : longs) dos.writeLong(v);
+        for (double v : doubles) dos.writeDouble(v);
+        for (char v : chars) dos.writeChar(v);
+        dos.flush();
+        Assert.assertEquals(baos.toByteArray(), expected.toByteArray());
+
+        final SimpleDataInput input = new SimpleDataInput(13, Marshalling.createByteInput(new ByteArrayInputStream(baos.toByteArray())));
+        Assert.assertEquals(input.readByte(), (byte) 1);
+        final int[] ints2 = new int[200];
+        final long[] longs2 = new long[200];
+        final double[] doubles2 = new double[200];
+        final char[] chars2 = new char[200];
+        input.readInts(ints2, 0, ints2.length);
+        input.readLongs(longs2, 0, longs2.length);
+        input.readDoubles(doubles2, 0, doubles2.length);
+        input.readChars(chars2, 0, chars2.length);
+        Assert.assertEquals(ints2, ints);
+        Assert.assertEquals(longs2, longs);
+        Assert.assertEquals(doubles2, doubles);
+        Assert.assertEquals(chars2, chars);
+        Assert.assertEquals(input.read(), -1);
+    }
+}
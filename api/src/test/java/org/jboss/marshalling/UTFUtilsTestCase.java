@@ -0,0 +1,101 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.marshalling;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.NotActiveException;
+import java.io.UTFDataFormatException;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test case for {@link UTFUtils}.
+ */
+public final class UTFUtilsTestCase {
+
+    private static String mixedString() {
+        final StringBuilder b = new StringBuilder();
+        for (int i = 0; i < 3000; i ++) {
+            // long ASCII runs broken up by two- and three-byte characters and embedded nulls
+            b.append((char) ('a' + i % 26));
+            if (i % 97 == 0) b.append('\u00e9');
+            if (i % 251 == 0) b.append('\u20ac');
+            if (i % 500 == 0) b.append('\0');
+        }
+        return b.toString();
+    }
+
+    @Test
+    public void testModifiedUTF8RoundTrip() throws IOException {
+        final String s = mixedString();
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        UTFUtils.writeUTFBytes(Marshalling.createByteOutput(baos), s);
+        final byte[] bytes = baos.toByteArray();
+
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        new DataOutputStream(expected).writeUTF(s);
+        final byte[] expectedBytes = expected.toByteArray();
+        Assert.assertEquals(bytes.length, expectedBytes.length - 2);
+        for (int i = 0; i < bytes.length; i ++) {
+            Assert.assertEquals(bytes[i], expectedBytes[i + 2]);
+        }
+
+        Assert.assertEquals(UTFUtils.readUTFBytes(Marshalling.createByteInput(new ByteArrayInputStream(bytes)), s.length()), s);
+        Assert.assertEquals(UTFUtils.readUTFBytesByByteCount(Marshalling.createByteInput(new ByteArrayInputStream(bytes)), bytes.length), s);
+    }
+
+    @Test
+    public void testDirectBufferRoundTrip() throws IOException {
+        final String s = mixedString();
+        // small odd-sized buffers force sequences to straddle buffer boundaries
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final SimpleDataOutput output = new SimpleDataOutput(37, Marshalling.createByteOutput(baos));
+        output.writeByte(1);
+        UTFUtils.writeUTFBytes(output, s);
+        output.writeUTF(s.substring(0, 1000));
+        output.flush();
+
+        final SimpleDataInput input = new SimpleDataInput(13, Marshalling.createByteInput(new ByteArrayInputStream(baos.toByteArray())));
+        Assert.assertEquals(input.readByte(), (byte) 1);
+        Assert.assertEquals(UTFUtils.readUTFBytes(input, s.length()), s);
+        Assert.assertEquals(input.readUTF(), s.substring(0, 1000));
+        Assert.assertEquals(input.read(), -1);
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testBufferTooSmallForChar() throws IOException {
+        final SimpleDataOutput output = new SimpleDataOutput(2, Marshalling.createByteOutput(new ByteArrayOutputStream()));
+        UTFUtils.writeUTFBytes(output, "a\u20ac");
+    }
+
+    @Test(expectedExceptions = NotActiveException.class)
+    public void testNoOutputToFlushTo() throws IOException {
+        final SimpleDataOutput output = new SimpleDataOutput(16);
+        UTFUtils.writeUTFBytes(output, mixedString());
+    }
+
+    @Test(expectedExceptions = UTFDataFormatException.class)
+    public void testTruncatedSequence() throws IOException {
+        UTFUtils.readUTFBytesByByteCount(Marshalling.createByteInput(new ByteArrayInputStream(new byte[] { 'a', (byte) 0xe2, (byte) 0x82 })), 3);
+    }
+}
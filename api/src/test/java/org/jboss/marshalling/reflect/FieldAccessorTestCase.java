@@ -0,0 +1,164 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.marshalling.reflect;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.Assert;
+import org.testng.SkipException;
+import org.testng.annotations.Test;
+
+/**
+ * Test case for the {@link FieldAccessor} implementations.
+ */
+public final class FieldAccessorTestCase {
+
+    static final class Holder {
+        boolean z;
+        char c;
+        byte b;
+        short s;
+        int i;
+        long j;
+        float f;
+        double d;
+        Object o;
+        private final int finalInt = 1;
+        private final Object finalObject = "initial";
+    }
+
+    private interface AccessorFactory {
+        FieldAccessor create(Field field) throws Exception;
+    }
+
+    @Test
+    public void testUnsafeFieldAccessor() throws Exception {
+        checkAccessors(new AccessorFactory() {
+            public FieldAccessor create(final Field field) {
+                return new UnsafeFieldAccessor(field);
+            }
+        });
+    }
+
+    @Test
+    public void testVarHandleFieldAccessor() throws Exception {
+        final Class<?> accessorClass;
+        try {
+            accessorClass = Class.forName("org.jboss.marshalling.reflect.VarHandleFieldAccessor");
+        } catch (ClassNotFoundException e) {
+            throw new SkipException("VarHandle field accessor requires Java 9 or later");
+        }
+        final Method create = accessorClass.getDeclaredMethod("create", Field.class);
+        create.setAccessible(true);
+        checkAccessors(new AccessorFactory() {
+            public FieldAccessor create(final Field field) throws Exception {
+                final FieldAccessor accessor = (FieldAccessor) create.invoke(null, field);
+                Assert.assertNotNull(accessor, field.getName());
+                return accessor;
+            }
+        });
+    }
+
+    @Test
+    public void testReflectionFieldAccessor() throws Exception {
+        checkAccessors(new AccessorFactory() {
+            public FieldAccessor create(final Field field) {
+                return new ReflectionFieldAccessor(field);
+            }
+        });
+    }
+
+    @Test
+    public void testDeniedUnsafeFallback() throws Exception {
+        final Method newFieldAccessor;
+        try {
+            newFieldAccessor = JDKSpecific.class.getDeclaredMethod("newFieldAccessor", Field.class, boolean.class, boolean.class);
+        } catch (NoSuchMethodException e) {
+            throw new SkipException("Unsafe memory access cannot be denied before Java 9");
+        }
+        newFieldAccessor.setAccessible(true);
+        // an open class is reached through a VarHandle
+        final FieldAccessor open = (FieldAccessor) newFieldAccessor.invoke(null, Holder.class.getDeclaredField("i"), Boolean.TRUE, Boolean.TRUE);
+        Assert.assertEquals(open.getClass().getSimpleName(), "VarHandleFieldAccessor");
+        // a class which is not open must not fall back to Unsafe, and must say which field could not be reached
+        final Field value = AtomicInteger.class.getDeclaredField("value");
+        final FieldAccessor closed = (FieldAccessor) newFieldAccessor.invoke(null, value, Boolean.TRUE, Boolean.TRUE);
+        Assert.assertTrue(closed instanceof ReflectionFieldAccessor, String.valueOf(closed));
+        if (value.isAccessible()) {
+            throw new SkipException("java.util.concurrent.atomic is open to this test");
+        }
+        try {
+            closed.getInt(new AtomicInteger(5));
+            Assert.fail("Missing exception");
+        } catch (IllegalStateException e) {
+            Assert.assertTrue(e.getMessage().contains("\"value\""), e.getMessage());
+            Assert.assertTrue(e.getMessage().contains(AtomicInteger.class.getName()), e.getMessage());
+        }
+    }
+
+    private static FieldAccessor accessor(final AccessorFactory factory, final String name) throws Exception {
+        return factory.create(Holder.class.getDeclaredField(name));
+    }
+
+    private static void checkAccessors(final AccessorFactory factory) throws Exception {
+        final Holder holder = new Holder();
+        accessor(factory, "z").setBoolean(holder, true);
+        accessor(factory, "c").setChar(holder, '\u20ac');
+        accessor(factory, "b").setByte(holder, (byte) -5);
+        accessor(factory, "s").setShort(holder, (short) 1234);
+        accessor(factory, "i").setInt(holder, 0x12345678);
+        accessor(factory, "j").setLong(holder, Long.MIN_VALUE + 1);
+        accessor(factory, "f").setFloat(holder, 1.5f);
+        accessor(factory, "d").setDouble(holder, -2.25);
+        accessor(factory, "o").setObject(holder, "value");
+        Assert.assertTrue(holder.z);
+        Assert.assertEquals(holder.c, '\u20ac');
+        Assert.assertEquals(holder.b, (byte) -5);
+        Assert.assertEquals(holder.s, (short) 1234);
+        Assert.assertEquals(holder.i, 0x12345678);
+        Assert.assertEquals(holder.j, Long.MIN_VALUE + 1);
+        Assert.assertEquals(holder.f, 1.5f);
+        Assert.assertEquals(holder.d, -2.25);
+        Assert.assertEquals(holder.o, "value");
+        Assert.assertTrue(accessor(factory, "z").getBoolean(holder));
+        Assert.assertEquals(accessor(factory, "c").getChar(holder), '\u20ac');
+        Assert.assertEquals(accessor(factory, "b").getByte(holder), (byte) -5);
+        Assert.assertEquals(accessor(factory, "s").getShort(holder), (short) 1234);
+        Assert.assertEquals(accessor(factory, "i").getInt(holder), 0x12345678);
+        Assert.assertEquals(accessor(factory, "j").getLong(holder), Long.MIN_VALUE + 1);
+        Assert.assertEquals(accessor(factory, "f").getFloat(holder), 1.5f);
+        Assert.assertEquals(accessor(factory, "d").getDouble(holder), -2.25);
+        Assert.assertEquals(accessor(factory, "o").getObject(holder), "value");
+
+        // final fields are written during deserialization, so the accessors must be able to set them
+        final Field finalInt = Holder.class.getDeclaredField("finalInt");
+        final Field finalObject = Holder.class.getDeclaredField("finalObject");
+        factory.create(finalInt).setInt(holder, 42);
+        factory.create(finalObject).setObject(holder, "replaced");
+        Assert.assertEquals(factory.create(finalInt).getInt(holder), 42);
+        Assert.assertEquals(factory.create(finalObject).getObject(holder), "replaced");
+        // read reflectively, as the compiler may inline a constant final field
+        finalInt.setAccessible(true);
+        finalObject.setAccessible(true);
+        Assert.assertEquals(finalInt.getInt(holder), 42);
+        Assert.assertEquals(finalObject.get(holder), "replaced");
+    }
+}
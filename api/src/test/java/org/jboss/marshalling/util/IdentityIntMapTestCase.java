@@ -0,0 +1,106 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.marshalling.util;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test case for {@link IdentityIntMap}.
+ */
+public final class IdentityIntMapTestCase {
+
+    @Test
+    public void testPutGetAcrossResizes() {
+        final IdentityIntMap<Object> map = new IdentityIntMap<Object>(4, 0.5f);
+        final Object[] objects = new Object[10000];
+        for (int i = 0; i < objects.length; i ++) {
+            objects[i] = new Object();
+            map.put(objects[i], i);
+        }
+        for (int i = 0; i < objects.length; i ++) {
+            Assert.assertEquals(map.get(objects[i], -1), i);
+        }
+        Assert.assertEquals(map.get(new Object(), -1), -1);
+        map.put(objects[17], 42);
+        Assert.assertEquals(map.get(objects[17], -1), 42);
+    }
+
+    @Test
+    public void testClearCycles() {
+        final IdentityIntMap<Object> map = new IdentityIntMap<Object>();
+        final Object[] objects = new Object[5000];
+        for (int i = 0; i < objects.length; i ++) {
+            objects[i] = new Object();
+        }
+        // alternate large and small messages so that the table both keeps and releases capacity
+        for (int round = 0; round < 20; round ++) {
+            final int n = round % 4 == 0 ? objects.length : 10;
+            for (int i = 0; i < n; i ++) {
+                map.put(objects[i], i + round);
+            }
+            for (int i = 0; i < objects.length; i ++) {
+                Assert.assertEquals(map.get(objects[i], -1), i < n ? i + round : -1);
+            }
+            map.clear();
+            Assert.assertEquals(map.get(objects[0], -1), -1);
+        }
+    }
+
+    @Test
+    public void testTruncate() {
+        final IdentityIntMap<Object> map = new IdentityIntMap<Object>(4, 0.5f);
+        final Object[] objects = new Object[3000];
+        for (int i = 0; i < objects.length; i ++) {
+            objects[i] = new Object();
+        }
+        for (int i = 0; i < 1000; i ++) {
+            map.put(objects[i], i);
+        }
+        // repeated roll-backs past resizes, with an earlier key renumbered in between
+        for (int round = 0; round < 5; round ++) {
+            for (int i = 1000; i < objects.length; i ++) {
+                map.put(objects[i], i);
+            }
+            map.put(objects[3], 2500);
+            Assert.assertEquals(map.size(), objects.length);
+            map.truncate(1000, 1000, -1);
+            Assert.assertEquals(map.size(), 1000);
+            for (int i = 0; i < objects.length; i ++) {
+                Assert.assertEquals(map.get(objects[i], -1), i < 1000 && i != 3 ? i : -1);
+            }
+            map.put(objects[3], 3);
+        }
+    }
+
+    @Test
+    public void testClone() {
+        final IdentityIntMap<Object> map = new IdentityIntMap<Object>();
+        final Object a = new Object();
+        final Object b = new Object();
+        map.put(a, 1);
+        final IdentityIntMap<Object> clone = map.clone();
+        clone.put(b, 2);
+        map.clear();
+        Assert.assertEquals(clone.get(a, -1), 1);
+        Assert.assertEquals(clone.get(b, -1), 2);
+        Assert.assertEquals(map.get(a, -1), -1);
+        Assert.assertEquals(map.get(b, -1), -1);
+    }
+}
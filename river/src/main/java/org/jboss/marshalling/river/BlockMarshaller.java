@@ -31,6 +31,9 @@ final class BlockMarshaller implements Marshaller {
     private final byte[] buffer;
     private int position;
 
+    // the most chars whose modified UTF-8 encoding is sure to fit in one block
+    private static final int MAX_UTF_BLOCK_CHARS = Integer.MAX_VALUE / 3;
+
     BlockMarshaller(RiverMarshaller riverMarshaller, int blockSize) {
         this.riverMarshaller = riverMarshaller;
         buffer = new byte[blockSize];
@@ -90,19 +93,8 @@ final class BlockMarshaller implements Marshaller {
         final int position = this.position;
         if (len > bl - position || len > bl >> 1) {
             flush();
-            if (len < 256) {
-                riverMarshaller.write(Protocol.ID_START_BLOCK_SMALL);
-                riverMarshaller.writeByte(len);
-                riverMarshaller.write(bytes, off, len);
-            } else if (len < 65536) {
-                riverMarshaller.write(Protocol.ID_START_BLOCK_MEDIUM);
-                riverMarshaller.writeShort(len);
-                riverMarshaller.write(bytes, off, len);
-            } else {
-                riverMarshaller.write(Protocol.ID_START_BLOCK_LARGE);
-                riverMarshaller.writeInt(len);
-                riverMarshaller.write(bytes, off, len);
-            }
+            writeBlockHeader(len);
+            riverMarshaller.write(bytes, off, len);
         } else {
             System.arraycopy(bytes, off, buffer, position, len);
             this.position = position + len;
@@ -278,9 +270,31 @@ final class BlockMarshaller implements Marshaller {
     }
 
     public void writeUTF(final String s) throws IOException {
-        // span multiple blocks, no doubt, but should be reasonably fast
         writeInt(s.length());
-        UTFUtils.writeUTFBytes(this, s);
+        final int length = s.length();
+        if (length == 0) {
+            return;
+        }
+        final RiverMarshaller marshaller = riverMarshaller;
+        final int position = this.position;
+        if (length <= MAX_UTF_BLOCK_CHARS) {
+            final long size = position + UTFUtils.getLongUTFLength(s);
+            if (size <= Integer.MAX_VALUE) {
+                // one block holding what is buffered plus the string, encoded straight into the marshaller's buffer
+                writeBlockHeader((int) size);
+                marshaller.write(buffer, 0, position);
+                this.position = 0;
+                UTFUtils.writeUTFBytes(marshaller, s);
+                return;
+            }
+        }
+        // span multiple blocks; modified UTF-8 encodes each char on its own, so any char index is a safe split point
+        flush();
+        for (int i = 0; i < length; i += MAX_UTF_BLOCK_CHARS) {
+            final String part = s.substring(i, Math.min(length, i + MAX_UTF_BLOCK_CHARS));
+            writeBlockHeader((int) UTFUtils.getLongUTFLength(part));
+            UTFUtils.writeUTFBytes(marshaller, part);
+        }
     }
 
     public void flush() throws IOException {
@@ -288,19 +302,23 @@ final class BlockMarshaller implements Marshaller {
         if (position == 0) {
             return;
         }
+        writeBlockHeader(position);
+        riverMarshaller.write(buffer, 0, position);
+        this.position = 0;
+    }
+
+    private void writeBlockHeader(final int len) throws IOException {
         final RiverMarshaller marshaller = riverMarshaller;
-        if (position < 256) {
+        if (len < 256) {
             marshaller.write(Protocol.ID_START_BLOCK_SMALL);
-            marshaller.writeByte(position);
-        } else if (position < 65536) {
+            marshaller.writeByte(len);
+        } else if (len < 65536) {
             marshaller.write(Protocol.ID_START_BLOCK_MEDIUM);
-            marshaller.writeShort(position);
+            marshaller.writeShort(len);
         } else {
             marshaller.write(Protocol.ID_START_BLOCK_LARGE);
-            marshaller.writeInt(position);
+            marshaller.writeInt(len);
         }
-        marshaller.write(buffer, 0, position);
-        this.position = 0;
     }
 
     public void close() throws IOException {
@@ -0,0 +1,124 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.marshalling.river;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jboss.marshalling.ClassResolver;
+import org.jboss.marshalling.SerializabilityChecker;
+
+/**
+ * A bounded cache of resolved serializable class descriptors, shared by all the unmarshallers of one factory.  Entries
+ * are keyed by configured class resolver identity, class name and serial version UID.  The resolver is still called
+ * for every class, and an entry is only reused when the resolved class, fields and superclass all match the stream it
+ * was built from, so a changed class layout simply replaces the entry.  When the cache is full, an arbitrary entry is
+ * evicted.
+ */
+final class ClassDescriptorCache {
+    private final int maxSize;
+    private final ConcurrentHashMap<Key, Entry> map;
+
+    ClassDescriptorCache(final int maxSize) {
+        this.maxSize = maxSize;
+        map = new ConcurrentHashMap<Key, Entry>(Math.min(maxSize, 256));
+    }
+
+    Entry get(final Key key) {
+        return map.get(key);
+    }
+
+    void put(final Key key, final Entry entry) {
+        if (map.size() >= maxSize && ! map.containsKey(key)) {
+            final Iterator<Key> iterator = map.keySet().iterator();
+            if (iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+        map.put(key, entry);
+    }
+
+    int size() {
+        return map.size();
+    }
+
+    static ClassDescriptor unwrap(final ClassDescriptor descriptor) {
+        return descriptor instanceof FutureSerializableClassDescriptor ? ((FutureSerializableClassDescriptor) descriptor).getResult() : descriptor;
+    }
+
+    static final class Key {
+        private final ClassResolver classResolver;
+        private final String className;
+        private final long uid;
+        private final int hashCode;
+
+        Key(final ClassResolver classResolver, final String className, final long uid) {
+            this.classResolver = classResolver;
+            this.className = className;
+            this.uid = uid;
+            hashCode = (System.identityHashCode(classResolver) * 31 + className.hashCode()) * 31 + Long.hashCode(uid);
+        }
+
+        public int hashCode() {
+            return hashCode;
+        }
+
+        public boolean equals(final Object obj) {
+            return obj instanceof Key && equals((Key) obj);
+        }
+
+        private boolean equals(final Key other) {
+            return this == other || other != null && classResolver == other.classResolver && uid == other.uid && className.equals(other.className);
+        }
+    }
+
+    static final class Entry {
+        private final Class<?> clazz;
+        private final int classType;
+        private final SerializabilityChecker serializabilityChecker;
+        private final String[] names;
+        private final Class<?>[] types;
+        private final boolean[] unshareds;
+        private final ClassDescriptor streamSuperDescriptor;
+        private final SerializableClassDescriptor descriptor;
+
+        Entry(final Class<?> clazz, final int classType, final SerializabilityChecker serializabilityChecker, final String[] names, final Class<?>[] types, final boolean[] unshareds, final ClassDescriptor streamSuperDescriptor, final SerializableClassDescriptor descriptor) {
+            this.clazz = clazz;
+            this.classType = classType;
+            this.serializabilityChecker = serializabilityChecker;
+            this.names = names;
+            this.types = types;
+            this.unshareds = unshareds;
+            this.streamSuperDescriptor = streamSuperDescriptor;
+            this.descriptor = descriptor;
+        }
+
+        boolean matches(final Class<?> clazz, final int classType, final SerializabilityChecker serializabilityChecker, final String[] names, final Class<?>[] types, final boolean[] unshareds, final ClassDescriptor streamSuperDescriptor) {
+            return this.clazz == clazz && this.classType == classType && this.serializabilityChecker == serializabilityChecker
+                && this.streamSuperDescriptor == streamSuperDescriptor && Arrays.equals(this.names, names)
+                && Arrays.equals(this.types, types) && Arrays.equals(this.unshareds, unshareds);
+        }
+
+        SerializableClassDescriptor getDescriptor() {
+            return descriptor;
+        }
+    }
+}
@@ -31,6 +31,7 @@ import java.util.AbstractSequentialList;
 import java.util.AbstractSet;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Dictionary;
 import java.util.EnumMap;
 import java.util.EnumSet;
@@ -124,6 +125,7 @@ final class ClassDescriptors {
     static final ClassDescriptor VECTOR = getSerializableClassDescriptor(Vector.class, ABSTRACT_LIST);
     static final ClassDescriptor STACK = getSerializableClassDescriptor(Stack.class, VECTOR);
     static final ClassDescriptor ARRAY_DEQUE = getSerializableClassDescriptor(ArrayDeque.class, ABSTRACT_COLLECTION);
+    static final ClassDescriptor BIT_SET = getSerializableClassDescriptor(BitSet.class, OBJECT_DESCRIPTOR);
 
     // These classes are final
     static final ClassDescriptor REVERSE_ORDER = getSerializableClassDescriptor(Protocol.reverseOrderClass);
@@ -0,0 +1,209 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.marshalling.river;
+
+import static java.lang.System.getSecurityManager;
+import static java.security.AccessController.doPrivileged;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.security.PrivilegedAction;
+
+import org.jboss.marshalling.TraceInformation;
+import org.jboss.marshalling.reflect.FieldAccessor;
+import org.jboss.marshalling.reflect.SerializableClass;
+import org.jboss.marshalling.reflect.SerializableField;
+
+/**
+ * A precompiled field plan for one serializable class.  The kind, accessor and type of every field are resolved once,
+ * so that writing or reading an instance is a single tight loop of unchecked accessor calls with no per-field kind
+ * lookups, accessibility tests or type checks.  The instance itself is type checked once per call.  The accessors are
+ * those of the {@link SerializableField}s, so the plan works with whichever field access the JDK allows.
+ */
+final class FieldSerializer {
+
+    private static final int BOOLEAN = 0;
+    private static final int BYTE = 1;
+    private static final int CHAR = 2;
+    private static final int SHORT = 3;
+    private static final int INT = 4;
+    private static final int LONG = 5;
+    private static final int FLOAT = 6;
+    private static final int DOUBLE = 7;
+    private static final int OBJECT = 8;
+    private static final int OBJECT_UNSHARED = 9;
+    // added to the kind of a field which has no matching field in the local class
+    private static final int MISSING = 16;
+
+    private static final ClassValue<FieldSerializer[]> WRITERS = new ClassValue<FieldSerializer[]>() {
+        protected FieldSerializer[] computeValue(final Class<?> type) {
+            return new FieldSerializer[1];
+        }
+    };
+
+    private final SerializableClass serializableClass;
+    private final SerializableField[] fields;
+    private final Class<?> declaringClass;
+    private final byte[] kinds;
+    private final FieldAccessor[] accessors;
+    private final Class<?>[] types;
+
+    @SuppressWarnings("deprecation")
+    FieldSerializer(final SerializableClass serializableClass, final SerializableField[] fields) {
+        this.serializableClass = serializableClass;
+        this.fields = fields;
+        final int cnt = fields.length;
+        final byte[] kinds = new byte[cnt];
+        final FieldAccessor[] accessors = new FieldAccessor[cnt];
+        final Class<?>[] types = new Class<?>[cnt];
+        Class<?> declaringClass = null;
+        for (int i = 0; i < cnt; i ++) {
+            final SerializableField serializableField = fields[i];
+            int kind;
+            switch (serializableField.getKind()) {
+                case BOOLEAN: kind = BOOLEAN; break;
+                case BYTE: kind = BYTE; break;
+                case CHAR: kind = CHAR; break;
+                case SHORT: kind = SHORT; break;
+                case INT: kind = INT; break;
+                case LONG: kind = LONG; break;
+                case FLOAT: kind = FLOAT; break;
+                case DOUBLE: kind = DOUBLE; break;
+                default: kind = serializableField.isUnshared() ? OBJECT_UNSHARED : OBJECT; break;
+            }
+            final Field field = serializableField.getField();
+            if (field == null) {
+                kind += MISSING;
+            } else {
+                if (declaringClass == null) {
+                    declaringClass = field.getDeclaringClass();
+                } else if (declaringClass != field.getDeclaringClass()) {
+                    throw new IllegalStateException("Fields of " + serializableClass + " are declared by more than one class");
+                }
+                accessors[i] = getSecurityManager() == null ? serializableField.getAccessor() : doPrivileged(new PrivilegedAction<FieldAccessor>() {
+                    public FieldAccessor run() {
+                        return serializableField.getAccessor();
+                    }
+                });
+                types[i] = field.getType();
+            }
+            kinds[i] = (byte) kind;
+        }
+        this.declaringClass = declaringClass;
+        this.kinds = kinds;
+        this.accessors = accessors;
+        this.types = types;
+    }
+
+    /**
+     * Get the field serializer for writing instances of the given class, creating it on first use.
+     *
+     * @param serializableClass the serializable class
+     * @return the field serializer
+     */
+    static FieldSerializer forClass(final SerializableClass serializableClass) {
+        final FieldSerializer[] holder = WRITERS.get(serializableClass.getSubjectClass());
+        FieldSerializer fieldSerializer = holder[0];
+        if (fieldSerializer == null) {
+            // benign race: all fields are final, and any two instances are equivalent
+            holder[0] = fieldSerializer = new FieldSerializer(serializableClass, serializableClass.getFields());
+        }
+        return fieldSerializer;
+    }
+
+    void writeFields(final RiverMarshaller marshaller, final Object obj) throws IOException {
+        if (declaringClass != null) {
+            declaringClass.cast(obj);
+        }
+        final byte[] kinds = this.kinds;
+        final FieldAccessor[] accessors = this.accessors;
+        int i = 0;
+        try {
+            for (; i < kinds.length; i ++) {
+                switch (kinds[i]) {
+                    case BOOLEAN: marshaller.writeBoolean(accessors[i].getBoolean(obj)); break;
+                    case BYTE: marshaller.writeByte(accessors[i].getByte(obj)); break;
+                    case CHAR: marshaller.writeChar(accessors[i].getChar(obj)); break;
+                    case SHORT: marshaller.writeShort(accessors[i].getShort(obj)); break;
+                    case INT: marshaller.writeIntField(accessors[i].getInt(obj)); break;
+                    case LONG: marshaller.writeLongField(accessors[i].getLong(obj)); break;
+                    case FLOAT: marshaller.writeFloat(accessors[i].getFloat(obj)); break;
+                    case DOUBLE: marshaller.writeDouble(accessors[i].getDouble(obj)); break;
+                    case OBJECT: marshaller.doWriteObject(accessors[i].getObject(obj), false); break;
+                    case OBJECT_UNSHARED: marshaller.doWriteObject(accessors[i].getObject(obj), true); break;
+                    case MISSING + BOOLEAN: marshaller.writeBoolean(false); break;
+                    case MISSING + BYTE: marshaller.writeByte(0); break;
+                    case MISSING + CHAR: marshaller.writeChar(0); break;
+                    case MISSING + SHORT: marshaller.writeShort(0); break;
+                    case MISSING + INT: marshaller.writeIntField(0); break;
+                    case MISSING + LONG: marshaller.writeLongField(0L); break;
+                    case MISSING + FLOAT: marshaller.writeFloat(0.0f); break;
+                    case MISSING + DOUBLE: marshaller.writeDouble(0.0); break;
+                    case MISSING + OBJECT: marshaller.doWriteObject(null, false); break;
+                    case MISSING + OBJECT_UNSHARED: marshaller.doWriteObject(null, true); break;
+                    default: throw new IllegalStateException();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            TraceInformation.addFieldInformation(e, serializableClass, fields[i]);
+            TraceInformation.addObjectInformation(e, obj);
+            throw e;
+        }
+    }
+
+    void readFields(final RiverUnmarshaller unmarshaller, final Object obj, final boolean discardMissing) throws IOException, ClassNotFoundException {
+        if (declaringClass != null) {
+            declaringClass.cast(obj);
+        }
+        final byte[] kinds = this.kinds;
+        final FieldAccessor[] accessors = this.accessors;
+        int i = 0;
+        try {
+            for (; i < kinds.length; i ++) {
+                switch (kinds[i]) {
+                    case BOOLEAN: accessors[i].setBoolean(obj, unmarshaller.readBoolean()); break;
+                    case BYTE: accessors[i].setByte(obj, unmarshaller.readByte()); break;
+                    case CHAR: accessors[i].setChar(obj, unmarshaller.readChar()); break;
+                    case SHORT: accessors[i].setShort(obj, unmarshaller.readShort()); break;
+                    case INT: accessors[i].setInt(obj, unmarshaller.readIntField()); break;
+                    case LONG: accessors[i].setLong(obj, unmarshaller.readLongField()); break;
+                    case FLOAT: accessors[i].setFloat(obj, unmarshaller.readFloat()); break;
+                    case DOUBLE: accessors[i].setDouble(obj, unmarshaller.readDouble()); break;
+                    case OBJECT: accessors[i].setObject(obj, types[i].cast(unmarshaller.doReadObject(false, discardMissing))); break;
+                    case OBJECT_UNSHARED: accessors[i].setObject(obj, types[i].cast(unmarshaller.doReadObject(true, discardMissing))); break;
+                    case MISSING + BOOLEAN: unmarshaller.readBoolean(); break;
+                    case MISSING + BYTE: unmarshaller.readByte(); break;
+                    case MISSING + CHAR: unmarshaller.readChar(); break;
+                    case MISSING + SHORT: unmarshaller.readShort(); break;
+                    case MISSING + INT: unmarshaller.readIntField(); break;
+                    case MISSING + LONG: unmarshaller.readLongField(); break;
+                    case MISSING + FLOAT: unmarshaller.readFloat(); break;
+                    case MISSING + DOUBLE: unmarshaller.readDouble(); break;
+                    case MISSING + OBJECT: unmarshaller.doReadObject(false, true); break;
+                    case MISSING + OBJECT_UNSHARED: unmarshaller.doReadObject(true, true); break;
+                    default: throw new IllegalStateException();
+                }
+            }
+        } catch (IOException | ClassNotFoundException | RuntimeException e) {
+            TraceInformation.addFieldInformation(e, serializableClass, fields[i]);
+            TraceInformation.addObjectInformation(e, obj);
+            throw e;
+        }
+    }
+}
@@ -55,6 +55,14 @@ final class FutureSerializableClassDescriptor extends SerializableClassDescripto
         return check(result).getSerializableClass();
     }
 
+    FieldSerializer getFieldSerializer() {
+        return check(result).getFieldSerializer();
+    }
+
+    SerializableClassDescriptor getResult() {
+        return result;
+    }
+
     public void setResult(final SerializableClassDescriptor result) {
         this.result = result;
     }
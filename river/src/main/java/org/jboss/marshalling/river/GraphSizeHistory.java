@@ -0,0 +1,78 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.marshalling.river;
+
+import java.util.Arrays;
+
+/**
+ * A record of the graph sizes recently seen by the marshallers and unmarshallers of one configuration, used to size
+ * the instance and class tables of new instances.  The hints track the 90th percentile of the last 64 streams, and
+ * start out as the configured instance and class counts.
+ */
+final class GraphSizeHistory {
+    private static final int SAMPLES = 64;
+    // recompute the hints after this many new samples
+    private static final int UPDATE_INTERVAL = 16;
+
+    private final int[] instanceCounts = new int[SAMPLES];
+    private final int[] classCounts = new int[SAMPLES];
+    private int next;
+    private int filled;
+    private volatile int instanceHint;
+    private volatile int classHint;
+
+    GraphSizeHistory(final int instanceCount, final int classCount) {
+        instanceHint = instanceCount;
+        classHint = classCount;
+    }
+
+    int getInstanceHint() {
+        return instanceHint;
+    }
+
+    int getClassHint() {
+        return classHint;
+    }
+
+    /**
+     * Record the size of a finished stream.
+     *
+     * @param instances the number of instances in the stream
+     * @param classes the number of classes in the stream
+     */
+    synchronized void record(final int instances, final int classes) {
+        final int next = this.next;
+        instanceCounts[next] = instances;
+        classCounts[next] = classes;
+        this.next = next + 1 & SAMPLES - 1;
+        if (filled < SAMPLES) {
+            filled ++;
+        }
+        if ((next + 1 & UPDATE_INTERVAL - 1) == 0) {
+            instanceHint = percentile(instanceCounts, filled);
+            classHint = percentile(classCounts, filled);
+        }
+    }
+
+    private static int percentile(final int[] samples, final int count) {
+        final int[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        return sorted[(count * 9 - 1) / 10];
+    }
+}
@@ -29,7 +29,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.Set;
 import java.util.TreeMap;
@@ -48,7 +50,7 @@ import sun.reflect.ReflectionFactory;
  */
 final class Protocol {
     public static final int MIN_VERSION = 2;
-    public static final int MAX_VERSION = 4;
+    public static final int MAX_VERSION = 5;
 
     public static final int ID_NULL                     = 0x01;
     public static final int ID_REPEAT_OBJECT_FAR        = 0x02;
@@ -162,8 +164,7 @@ final class Protocol {
     public static final int ID_SINGLETON_LIST_OBJECT    = 0x5c;
     public static final int ID_EMPTY_LIST_OBJECT        = 0x5d;
     // sets
-    @Deprecated
-    public static final int ID_CC_HASH_SET              = 0x5e;
+    public static final int ID_CC_HASH_SET              = 0x5e; // protocol version >= 5: load factor follows the type
     @Deprecated
     public static final int ID_CC_LINKED_HASH_SET       = 0x5f;
     @Deprecated
@@ -172,12 +173,10 @@ final class Protocol {
     public static final int ID_EMPTY_SET_OBJECT         = 0x62;
     // maps
     public static final int ID_CC_IDENTITY_HASH_MAP     = 0x63;
-    @Deprecated
-    public static final int ID_CC_HASH_MAP              = 0x64;
+    public static final int ID_CC_HASH_MAP              = 0x64; // protocol version >= 5: load factor follows the type
     @Deprecated
     public static final int ID_CC_HASHTABLE             = 0x65;
-    @Deprecated
-    public static final int ID_CC_LINKED_HASH_MAP       = 0x66;
+    public static final int ID_CC_LINKED_HASH_MAP       = 0x66; // protocol version >= 5: load factor and access order follow the type
     @Deprecated
     public static final int ID_CC_TREE_MAP              = 0x67;
     public static final int ID_SINGLETON_MAP_OBJECT     = 0x68;
@@ -193,8 +192,7 @@ final class Protocol {
     public static final int ID_ABSTRACT_QUEUE           = 0x70;
     public static final int ID_ABSTRACT_SEQUENTIAL_LIST = 0x71;
     // concurrent collections and maps
-    @Deprecated
-    public static final int ID_CC_CONCURRENT_HASH_MAP       = 0x72;
+    public static final int ID_CC_CONCURRENT_HASH_MAP       = 0x72; // protocol version >= 5
     public static final int ID_CC_COPY_ON_WRITE_ARRAY_LIST  = 0x73;
     public static final int ID_CC_COPY_ON_WRITE_ARRAY_SET   = 0x74;
     public static final int ID_CC_VECTOR                    = 0x75;
@@ -217,6 +215,20 @@ final class Protocol {
 
     public static final int ID_UNMODIFIABLE_MAP_ENTRY_SET = 0x82;
 
+    // protocol version >= 5
+    public static final int ID_BIT_SET                  = 0x83; // byte count then little-endian bit bytes
+    public static final int ID_COLLECTION_CHUNKED       = 0x84; // type, then counted chunks of members ending with an empty chunk
+    public static final int ID_COLLECTION_CHUNKED_RESET = 0x85; // as above, but each chunk's members leave the instance cache after it
+
+    // protocol version >= 5: stream flags byte following the version byte
+    // (lengths, counts and back-reference indices are always variable-length in this version)
+    public static final int FLAG_VAR_INT_FIELDS         = 0x01; // int and long field values are zig-zag variable-length
+    public static final int FLAG_SESSION_CLASSES        = 0x02; // class indices continue from the previous stream
+    public static final int FLAGS_MASK                  = FLAG_VAR_INT_FIELDS | FLAG_SESSION_CLASSES;
+
+    // protocol version >= 5: smallest hash collection load factor written or accepted
+    public static final float MIN_HASH_LOAD_FACTOR      = 0.1f;
+
     private static class UnsafeHolder {
         // WFLY-14077 Never ever refactor out unsafe field from this wrapper class
         private static final Unsafe unsafe = getSecurityManager() == null ? GetUnsafeAction.INSTANCE.run() : doPrivileged(GetUnsafeAction.INSTANCE);
@@ -259,10 +271,42 @@ final class Protocol {
     static final Field unmodifiableMapEntrySetField;
     static final Constructor<?> unmodifiableMapEntrySetCtor;
 
+    // offsets of the hash collection state written by protocol version 5, or -1 if the JDK does not have the field or
+    // Unsafe memory access is denied
+    static final long hashMapLoadFactorOffset;
+    static final long linkedHashMapAccessOrderOffset;
+    static final long hashSetMapOffset;
+
     static Object readField(Field field, final Object obj) {
         return UnsafeHolder.unsafe.getObject(obj, UnsafeHolder.unsafe.objectFieldOffset(field));
     }
 
+    static float readFloatField(final long offset, final Object obj) {
+        return UnsafeHolder.unsafe.getFloat(obj, offset);
+    }
+
+    static boolean readBooleanField(final long offset, final Object obj) {
+        return UnsafeHolder.unsafe.getBoolean(obj, offset);
+    }
+
+    static Object readObjectField(final long offset, final Object obj) {
+        return UnsafeHolder.unsafe.getObject(obj, offset);
+    }
+
+    static long findFieldOffset(final Class<?> clazz, final String name, final Class<?> type) {
+        for (Field field : getSecurityManager() == null ? clazz.getDeclaredFields() : doPrivileged(new GetDeclaredFieldsAction(clazz))) {
+            if (field.getName().equals(name) && field.getType() == type) {
+                try {
+                    return UnsafeHolder.unsafe.objectFieldOffset(field);
+                } catch (UnsupportedOperationException e) {
+                    // Unsafe memory access is denied; leave the class to the generic serialization path
+                    return -1;
+                }
+            }
+        }
+        return -1;
+    }
+
     static Field findUnmodifiableField(final Class<?> search) {
         Class<?> clazz = search;
         final HashSet<String> strings = new HashSet<String>(Arrays.asList("c", "ss", "list", "m"));
@@ -327,6 +371,9 @@ final class Protocol {
         unmodifiableSortedMapField = findUnmodifiableField(unmodifiableSortedMapClass);
 
         unmodifiableMapEntrySetField = findUnmodifiableField(unmodifiableMapEntrySetClass);
+        hashMapLoadFactorOffset = findFieldOffset(HashMap.class, "loadFactor", float.class);
+        linkedHashMapAccessOrderOffset = findFieldOffset(LinkedHashMap.class, "accessOrder", boolean.class);
+        hashSetMapOffset = findFieldOffset(HashSet.class, "map", HashMap.class);
         unmodifiableMapEntrySetCtor = sm == null ? getConstructorForSetWihtUnmodifiableMapEntry() : doPrivileged(new PrivilegedAction<Constructor>() {
             public Constructor run() {
                 return getConstructorForSetWihtUnmodifiableMapEntry();
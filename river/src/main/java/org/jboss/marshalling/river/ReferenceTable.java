@@ -0,0 +1,132 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.marshalling.river;
+
+import java.util.Arrays;
+
+/**
+ * The unmarshaller's table of objects which may be the target of back-references.  Storage is split into fixed-size
+ * chunks, so the table grows without copying its contents, and the chunks are kept for reuse when the table is cleared,
+ * up to a bound.
+ */
+final class ReferenceTable {
+    private static final int CHUNK_SHIFT = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    // chunks beyond this many are released on clear
+    private static final int RETAINED_CHUNKS = 64;
+
+    private Object[][] chunks;
+    private int size;
+
+    ReferenceTable(final int initialCapacity) {
+        chunks = new Object[Math.max(1, (initialCapacity + CHUNK_MASK) >>> CHUNK_SHIFT)][];
+    }
+
+    /**
+     * Get the number of entries in the table.
+     *
+     * @return the number of entries
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Determine whether the given index refers to an entry of this table.
+     *
+     * @param index the index
+     * @return {@code true} if the index is valid
+     */
+    boolean isValid(final int index) {
+        return index >= 0 && index < size;
+    }
+
+    /**
+     * Get the entry at the given index, which must be valid.
+     *
+     * @param index the index
+     * @return the entry
+     */
+    Object get(final int index) {
+        return chunks[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+    }
+
+    /**
+     * Replace the entry at the given index, which must be valid.
+     *
+     * @param index the index
+     * @param value the new entry
+     */
+    void set(final int index, final Object value) {
+        chunks[index >>> CHUNK_SHIFT][index & CHUNK_MASK] = value;
+    }
+
+    /**
+     * Add an entry to the end of the table.
+     *
+     * @param value the entry
+     */
+    void add(final Object value) {
+        final int size = this.size;
+        final int chunkIndex = size >>> CHUNK_SHIFT;
+        Object[][] chunks = this.chunks;
+        if (chunkIndex == chunks.length) {
+            // only the chunk directory is copied
+            this.chunks = chunks = Arrays.copyOf(chunks, chunks.length << 1);
+        }
+        Object[] chunk = chunks[chunkIndex];
+        if (chunk == null) {
+            chunks[chunkIndex] = chunk = new Object[CHUNK_SIZE];
+        }
+        chunk[size & CHUNK_MASK] = value;
+        this.size = size + 1;
+    }
+
+    /**
+     * Remove all entries, keeping a bounded number of chunks for reuse.
+     */
+    void clear() {
+        truncate(0);
+    }
+
+    /**
+     * Remove the entries from the given index onwards, keeping a bounded number of chunks for reuse.
+     *
+     * @param newSize the number of entries to keep
+     */
+    void truncate(final int newSize) {
+        final int size = this.size;
+        if (newSize >= size) {
+            return;
+        }
+        final Object[][] chunks = this.chunks;
+        final int first = newSize >>> CHUNK_SHIFT;
+        final int used = (size + CHUNK_MASK) >>> CHUNK_SHIFT;
+        for (int i = first; i < used; i ++) {
+            final int from = i == first ? newSize & CHUNK_MASK : 0;
+            if (from == 0 && i >= RETAINED_CHUNKS) {
+                chunks[i] = null;
+            } else {
+                Arrays.fill(chunks[i], from, i == used - 1 && (size & CHUNK_MASK) != 0 ? size & CHUNK_MASK : CHUNK_SIZE, null);
+            }
+        }
+        this.size = newSize;
+    }
+}
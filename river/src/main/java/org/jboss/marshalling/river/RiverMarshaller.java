@@ -38,15 +38,21 @@ import java.util.AbstractSequentialList;
 import java.util.AbstractSet;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.EnumMap;
 import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Stack;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CopyOnWriteArraySet;
 
@@ -82,6 +88,15 @@ public class RiverMarshaller extends AbstractMarshaller {
     private RiverObjectOutputStream objectOutputStream;
     private ObjectOutput objectOutput;
     private BlockMarshaller blockMarshaller;
+    private final boolean varIntFields;
+    private final boolean precompiledFields;
+    private final int sessionClassLimit;
+    private boolean finishing;
+    private final GraphSizeHistory graphSizeHistory;
+    // no identity tracking; every reference is written as a new object
+    private final boolean treeMode;
+    // collection stream members are dropped from the instance cache after each chunk
+    private final boolean collectionStreamReset;
 
     protected RiverMarshaller(final RiverMarshallerFactory marshallerFactory, final SerializableClassRegistry registry, final MarshallingConfiguration configuration) throws IOException {
         super(marshallerFactory, configuration);
@@ -90,15 +105,22 @@ public class RiverMarshaller extends AbstractMarshaller {
             throw new IOException("Unsupported protocol version " + configuredVersion);
         }
         this.registry = registry;
+        varIntFields = configuredVersion >= 5 && configuration.isVarIntFields();
+        precompiledFields = configuration.isPrecompiledFields();
+        sessionClassLimit = configuredVersion >= 5 ? configuration.getSessionClassLimit() : 0;
+        treeMode = configuration.isTreeMode();
+        collectionStreamReset = configuration.isCollectionStreamReset();
+        graphSizeHistory = configuration.isAdaptiveCounts() ? marshallerFactory.getGraphSizeHistory(configuration) : null;
+        final int instanceCount = graphSizeHistory == null ? configuration.getInstanceCount() : graphSizeHistory.getInstanceHint();
+        final int classCount = graphSizeHistory == null ? configuration.getClassCount() : graphSizeHistory.getClassHint();
         final float loadFactor = 0x0.5p0f;
-        instanceCache = new IdentityIntMap<Object>((int) ((double)configuration.getInstanceCount() / (double)loadFactor), loadFactor);
-        classCache = new IdentityIntMap<Class<?>>((int) ((double)configuration.getClassCount() / (double)loadFactor), loadFactor);
-        serialClassCache = new IdentityIntMap<Class<?>>((int) ((double)configuration.getClassCount() / (double)loadFactor), loadFactor);
-        externalizers = new IdentityHashMap<Class<?>, Externalizer>(configuration.getClassCount());
+        instanceCache = new IdentityIntMap<Object>(Math.max(1, (int) ((double)instanceCount / (double)loadFactor)), loadFactor);
+        classCache = new IdentityIntMap<Class<?>>(Math.max(1, (int) ((double)classCount / (double)loadFactor)), loadFactor);
+        serialClassCache = new IdentityIntMap<Class<?>>(Math.max(1, (int) ((double)classCount / (double)loadFactor)), loadFactor);
+        externalizers = new IdentityHashMap<Class<?>, Externalizer>(classCount);
     }
 
     protected void doWriteObject(final Object original, final boolean unshared) throws IOException {
-        final ClassExternalizerFactory classExternalizerFactory = this.classExternalizerFactory;
         final ObjectResolver objectResolver = this.objectResolver;
         final ObjectResolver objectPreResolver = this.objectPreResolver;
         Object obj = original;
@@ -115,7 +137,7 @@ public class RiverMarshaller extends AbstractMarshaller {
                     return;
                 }
                 final int rid;
-                if (! unshared && (rid = instanceCache.get(obj, -1)) != -1) {
+                if (! unshared && ! treeMode && (rid = instanceCache.get(obj, -1)) != -1) {
                     final int diff = rid - instanceSeq;
                     if (diff >= -256) {
                         write(ID_REPEAT_OBJECT_NEAR);
@@ -125,7 +147,7 @@ public class RiverMarshaller extends AbstractMarshaller {
                         writeShort(diff);
                     } else {
                         write(ID_REPEAT_OBJECT_FAR);
-                        writeInt(rid);
+                        writeCount(rid);
                     }
                     return;
                 }
@@ -206,13 +228,16 @@ public class RiverMarshaller extends AbstractMarshaller {
                 write(ID_NEW_OBJECT);
                 writeEnumClass(theEnum.getDeclaringClass());
                 writeString(theEnum.name());
-                instanceCache.put(obj, instanceSeq++);
+                cacheInstance(obj);
                 return;
             }
             if (id != -1) {
                 if (id == ID_CC_COPY_ON_WRITE_ARRAY_LIST ||
                         id == ID_CC_COPY_ON_WRITE_ARRAY_SET) {
                     info = registry.lookup(objClass);
+                } else if (isFormerlyGeneric(id) && (getExternalizer(objClass) != null || classTable.getClassWriter(objClass) != null)) {
+                    // honor a configured externalizer or class table entry for these formerly generic classes
+                    info = registry.lookup(objClass);
                 } else {
                     writeKnownObject(unshared, obj, objClass, id);
                     return;
@@ -226,32 +251,26 @@ public class RiverMarshaller extends AbstractMarshaller {
             if (obj instanceof Proxy) {
                 write(unshared ? ID_NEW_OBJECT_UNSHARED : ID_NEW_OBJECT);
                 writeProxyClass(objClass);
-                instanceCache.put(obj, instanceSeq++);
+                cacheInstance(obj);
                 doWriteObject(Proxy.getInvocationHandler(obj), false);
                 if (unshared) {
-                    instanceCache.put(obj, -1);
+                    uncacheInstance(obj);
                 }
                 return;
             }
             // it's a user type
             // user type #1: externalizer
-            Externalizer externalizer;
-            if (externalizers.containsKey(objClass)) {
-                externalizer = externalizers.get(objClass);
-            } else {
-                externalizer = classExternalizerFactory.getExternalizer(objClass);
-                externalizers.put(objClass, externalizer);
-            }
+            final Externalizer externalizer = getExternalizer(objClass);
             if (externalizer != null) {
                 write(unshared ? ID_NEW_OBJECT_UNSHARED : ID_NEW_OBJECT);
                 writeExternalizerClass(objClass, externalizer);
-                instanceCache.put(obj, instanceSeq++);
+                cacheInstance(obj);
                 final ObjectOutput objectOutput;
                 objectOutput = getObjectOutput();
                 externalizer.writeExternal(obj, objectOutput);
                 writeEndBlock();
                 if (unshared) {
-                    instanceCache.put(obj, -1);
+                    uncacheInstance(obj);
                 }
                 return;
             }
@@ -264,16 +283,16 @@ public class RiverMarshaller extends AbstractMarshaller {
             if (serializabilityChecker.isSerializable(objClass)) {
                 write(unshared ? ID_NEW_OBJECT_UNSHARED : ID_NEW_OBJECT);
                 writeSerializableClass(objClass, false);
-                instanceCache.put(obj, instanceSeq++);
+                cacheInstance(obj);
                 doWriteSerializableObject(info, obj, objClass);
                 if (unshared) {
-                    instanceCache.put(obj, -1);
+                    uncacheInstance(obj);
                 }
                 return;
             }
             throw new NotSerializableException(objClass.getName());
         } finally {
-            if (! unreplaced && obj != original) {
+            if (! unreplaced && ! treeMode && obj != original) {
                 final int replId = instanceCache.get(obj, -1);
                 if (replId != -1) {
                     instanceCache.put(original, replId);
@@ -282,16 +301,60 @@ public class RiverMarshaller extends AbstractMarshaller {
         }
     }
 
+    private Externalizer getExternalizer(final Class<?> objClass) {
+        Externalizer externalizer;
+        if (externalizers.containsKey(objClass)) {
+            externalizer = externalizers.get(objClass);
+        } else {
+            externalizer = classExternalizerFactory.getExternalizer(objClass);
+            externalizers.put(objClass, externalizer);
+        }
+        return externalizer;
+    }
+
+    // classes written generically before protocol version 5, which a configured externalizer or class table may still claim
+    private static boolean isFormerlyGeneric(final int id) {
+        return id == ID_CC_HASH_MAP || id == ID_CC_HASH_SET || id == ID_CC_LINKED_HASH_MAP || id == ID_CC_CONCURRENT_HASH_MAP || id == ID_BIT_SET;
+    }
+
+    private void writeCollectionHeader(final boolean unshared, final int len, final int id) throws IOException {
+        if (len == 0) {
+            write(unshared ? ID_COLLECTION_EMPTY_UNSHARED : ID_COLLECTION_EMPTY);
+        } else if (len <= 256) {
+            write(unshared ? ID_COLLECTION_SMALL_UNSHARED : ID_COLLECTION_SMALL);
+            write(len);
+        } else if (len <= 65536) {
+            write(unshared ? ID_COLLECTION_MEDIUM_UNSHARED : ID_COLLECTION_MEDIUM);
+            writeShort(len);
+        } else {
+            write(unshared ? ID_COLLECTION_LARGE_UNSHARED : ID_COLLECTION_LARGE);
+            writeCount(len);
+        }
+        write(id);
+    }
+
+    private void cacheInstance(final Object obj) {
+        if (! treeMode) {
+            instanceCache.put(obj, instanceSeq++);
+        }
+    }
+
+    private void uncacheInstance(final Object obj) {
+        if (! treeMode) {
+            instanceCache.put(obj, -1);
+        }
+    }
+
     private void writeExternalizable(boolean unshared, Object obj, Class<?> objClass) throws IOException {
         write(unshared ? ID_NEW_OBJECT_UNSHARED : ID_NEW_OBJECT);
         final Externalizable ext = (Externalizable) obj;
         final ObjectOutput objectOutput = getObjectOutput();
         writeExternalizableClass(objClass);
-        instanceCache.put(obj, instanceSeq++);
+        cacheInstance(obj);
         ext.writeExternal(objectOutput);
         writeEndBlock();
         if (unshared) {
-            instanceCache.put(obj, -1);
+            uncacheInstance(obj);
         }
         return;
     }
@@ -302,12 +365,12 @@ public class RiverMarshaller extends AbstractMarshaller {
         if (len == 0) {
             write(unshared ? ID_ARRAY_EMPTY_UNSHARED : ID_ARRAY_EMPTY);
             writeClass(objClass.getComponentType());
-            instanceCache.put(obj, instanceSeq++);
+            cacheInstance(obj);
         } else if (len <= 256) {
             write(unshared ? ID_ARRAY_SMALL_UNSHARED : ID_ARRAY_SMALL);
             write(len);
             writeClass(objClass.getComponentType());
-            instanceCache.put(obj, instanceSeq++);
+            cacheInstance(obj);
             for (int i = 0; i < len; i++) {
                 doWriteObject(objects[i], unshared);
             }
@@ -315,21 +378,21 @@ public class RiverMarshaller extends AbstractMarshaller {
             write(unshared ? ID_ARRAY_MEDIUM_UNSHARED : ID_ARRAY_MEDIUM);
             writeShort(len);
             writeClass(objClass.getComponentType());
-            instanceCache.put(obj, instanceSeq++);
+            cacheInstance(obj);
             for (int i = 0; i < len; i++) {
                 doWriteObject(objects[i], unshared);
             }
         } else {
             write(unshared ? ID_ARRAY_LARGE_UNSHARED : ID_ARRAY_LARGE);
-            writeInt(len);
+            writeCount(len);
             writeClass(objClass.getComponentType());
-            instanceCache.put(obj, instanceSeq++);
+            cacheInstance(obj);
             for (int i = 0; i < len; i++) {
                 doWriteObject(objects[i], unshared);
             }
         }
         if (unshared) {
-            instanceCache.put(obj, -1);
+            uncacheInstance(obj);
         }
         return;
     }
@@ -391,21 +454,20 @@ public class RiverMarshaller extends AbstractMarshaller {
                     writeShort(len);
                 } else {
                     write(ID_STRING_LARGE);
-                    writeInt(len);
+                    writeCount(len);
                 }
-                shallowFlush();
-                UTFUtils.writeUTFBytes(byteOutput, string);
+                UTFUtils.writeUTFBytes(this, string);
                 if (unshared) {
-                    instanceCache.put(obj, -1);
+                    uncacheInstance(obj);
                     instanceSeq++;
                 } else {
-                    instanceCache.put(obj, instanceSeq++);
+                    cacheInstance(obj);
                 }
                 return;
             }
             case ID_BYTE_ARRAY_CLASS: {
                 if (!unshared) {
-                    instanceCache.put(obj, instanceSeq++);
+                    cacheInstance(obj);
                 }
                 final byte[] bytes = (byte[]) obj;
                 final int len = bytes.length;
@@ -424,18 +486,18 @@ public class RiverMarshaller extends AbstractMarshaller {
                     write(bytes, 0, len);
                 } else {
                     write(unshared ? ID_ARRAY_LARGE_UNSHARED : ID_ARRAY_LARGE);
-                    writeInt(len);
+                    writeCount(len);
                     write(ID_PRIM_BYTE);
                     write(bytes, 0, len);
                 }
                 if (unshared) {
-                    instanceCache.put(obj, -1);
+                    uncacheInstance(obj);
                 }
                 return;
             }
             case ID_BOOLEAN_ARRAY_CLASS: {
                 if (!unshared) {
-                    instanceCache.put(obj, instanceSeq++);
+                    cacheInstance(obj);
                 }
                 final boolean[] booleans = (boolean[]) obj;
                 final int len = booleans.length;
@@ -454,18 +516,18 @@ public class RiverMarshaller extends AbstractMarshaller {
                     writeBooleanArray(booleans);
                 } else {
                     write(unshared ? ID_ARRAY_LARGE_UNSHARED : ID_ARRAY_LARGE);
-                    writeInt(len);
+                    writeCount(len);
                     write(ID_PRIM_BOOLEAN);
                     writeBooleanArray(booleans);
                 }
                 if (unshared) {
-                    instanceCache.put(obj, -1);
+                    uncacheInstance(obj);
                 }
                 return;
             }
             case ID_CHAR_ARRAY_CLASS: {
                 if (!unshared) {
-                    instanceCache.put(obj, instanceSeq++);
+                    cacheInstance(obj);
                 }
                 final char[] chars = (char[]) obj;
                 final int len = chars.length;
@@ -476,32 +538,26 @@ public class RiverMarshaller extends AbstractMarshaller {
                     write(unshared ? ID_ARRAY_SMALL_UNSHARED : ID_ARRAY_SMALL);
                     write(len);
                     write(ID_PRIM_CHAR);
-                    for (int i = 0; i < len; i++) {
-                        writeChar(chars[i]);
-                    }
+                    writeChars(chars, 0, len);
                 } else if (len <= 65536) {
                     write(unshared ? ID_ARRAY_MEDIUM_UNSHARED : ID_ARRAY_MEDIUM);
                     writeShort(len);
                     write(ID_PRIM_CHAR);
-                    for (int i = 0; i < len; i++) {
-                        writeChar(chars[i]);
-                    }
+                    writeChars(chars, 0, len);
                 } else {
                     write(unshared ? ID_ARRAY_LARGE_UNSHARED : ID_ARRAY_LARGE);
-                    writeInt(len);
+                    writeCount(len);
                     write(ID_PRIM_CHAR);
-                    for (int i = 0; i < len; i++) {
-                        writeChar(chars[i]);
-                    }
+                    writeChars(chars, 0, len);
                 }
                 if (unshared) {
-                    instanceCache.put(obj, -1);
+                    uncacheInstance(obj);
                 }
                 return;
             }
             case ID_SHORT_ARRAY_CLASS: {
                 if (!unshared) {
-                    instanceCache.put(obj, instanceSeq++);
+                    cacheInstance(obj);
                 }
                 final short[] shorts = (short[]) obj;
                 final int len = shorts.length;
@@ -512,32 +568,26 @@ public class RiverMarshaller extends AbstractMarshaller {
                     write(unshared ? ID_ARRAY_SMALL_UNSHARED : ID_ARRAY_SMALL);
                     write(len);
                     write(ID_PRIM_SHORT);
-                    for (int i = 0; i < len; i++) {
-                        writeShort(shorts[i]);
-                    }
+                    writeShorts(shorts, 0, len);
                 } else if (len <= 65536) {
                     write(unshared ? ID_ARRAY_MEDIUM_UNSHARED : ID_ARRAY_MEDIUM);
                     writeShort(len);
                     write(ID_PRIM_SHORT);
-                    for (int i = 0; i < len; i++) {
-                        writeShort(shorts[i]);
-                    }
+                    writeShorts(shorts, 0, len);
                 } else {
                     write(unshared ? ID_ARRAY_LARGE_UNSHARED : ID_ARRAY_LARGE);
-                    writeInt(len);
+                    writeCount(len);
                     write(ID_PRIM_SHORT);
-                    for (int i = 0; i < len; i++) {
-                        writeShort(shorts[i]);
-                    }
+                    writeShorts(shorts, 0, len);
                 }
                 if (unshared) {
-                    instanceCache.put(obj, -1);
+                    uncacheInstance(obj);
                 }
                 return;
             }
             case ID_INT_ARRAY_CLASS: {
                 if (!unshared) {
-                    instanceCache.put(obj, instanceSeq++);
+                    cacheInstance(obj);
                 }
                 final int[] ints = (int[]) obj;
                 final int len = ints.length;
@@ -548,32 +598,26 @@ public class RiverMarshaller extends AbstractMarshaller {
                     write(unshared ? ID_ARRAY_SMALL_UNSHARED : ID_ARRAY_SMALL);
                     write(len);
                     write(ID_PRIM_INT);
-                    for (int i = 0; i < len; i++) {
-                        writeInt(ints[i]);
-                    }
+                    writeInts(ints, 0, len);
                 } else if (len <= 65536) {
                     write(unshared ? ID_ARRAY_MEDIUM_UNSHARED : ID_ARRAY_MEDIUM);
                     writeShort(len);
                     write(ID_PRIM_INT);
-                    for (int i = 0; i < len; i++) {
-                        writeInt(ints[i]);
-                    }
+                    writeInts(ints, 0, len);
                 } else {
                     write(unshared ? ID_ARRAY_LARGE_UNSHARED : ID_ARRAY_LARGE);
-                    writeInt(len);
+                    writeCount(len);
                     write(ID_PRIM_INT);
-                    for (int i = 0; i < len; i++) {
-                        writeInt(ints[i]);
-                    }
+                    writeInts(ints, 0, len);
                 }
                 if (unshared) {
-                    instanceCache.put(obj, -1);
+                    uncacheInstance(obj);
                 }
                 return;
             }
             case ID_LONG_ARRAY_CLASS: {
                 if (!unshared) {
-                    instanceCache.put(obj, instanceSeq++);
+                    cacheInstance(obj);
                 }
                 final long[] longs = (long[]) obj;
                 final int len = longs.length;
@@ -584,32 +628,26 @@ public class RiverMarshaller extends AbstractMarshaller {
                     write(unshared ? ID_ARRAY_SMALL_UNSHARED : ID_ARRAY_SMALL);
                     write(len);
                     write(ID_PRIM_LONG);
-                    for (int i = 0; i < len; i++) {
-                        writeLong(longs[i]);
-                    }
+                    writeLongs(longs, 0, len);
                 } else if (len <= 65536) {
                     write(unshared ? ID_ARRAY_MEDIUM_UNSHARED : ID_ARRAY_MEDIUM);
                     writeShort(len);
                     write(ID_PRIM_LONG);
-                    for (int i = 0; i < len; i++) {
-                        writeLong(longs[i]);
-                    }
+                    writeLongs(longs, 0, len);
                 } else {
                     write(unshared ? ID_ARRAY_LARGE_UNSHARED : ID_ARRAY_LARGE);
-                    writeInt(len);
+                    writeCount(len);
                     write(ID_PRIM_LONG);
-                    for (int i = 0; i < len; i++) {
-                        writeLong(longs[i]);
-                    }
+                    writeLongs(longs, 0, len);
                 }
                 if (unshared) {
-                    instanceCache.put(obj, -1);
+                    uncacheInstance(obj);
                 }
                 return;
             }
             case ID_FLOAT_ARRAY_CLASS: {
                 if (!unshared) {
-                    instanceCache.put(obj, instanceSeq++);
+                    cacheInstance(obj);
                 }
                 final float[] floats = (float[]) obj;
                 final int len = floats.length;
@@ -620,32 +658,26 @@ public class RiverMarshaller extends AbstractMarshaller {
                     write(unshared ? ID_ARRAY_SMALL_UNSHARED : ID_ARRAY_SMALL);
                     write(len);
                     write(ID_PRIM_FLOAT);
-                    for (int i = 0; i < len; i++) {
-                        writeFloat(floats[i]);
-                    }
+                    writeFloats(floats, 0, len);
                 } else if (len <= 65536) {
                     write(unshared ? ID_ARRAY_MEDIUM_UNSHARED : ID_ARRAY_MEDIUM);
                     writeShort(len);
                     write(ID_PRIM_FLOAT);
-                    for (int i = 0; i < len; i++) {
-                        writeFloat(floats[i]);
-                    }
+                    writeFloats(floats, 0, len);
                 } else {
                     write(unshared ? ID_ARRAY_LARGE_UNSHARED : ID_ARRAY_LARGE);
-                    writeInt(len);
+                    writeCount(len);
                     write(ID_PRIM_FLOAT);
-                    for (int i = 0; i < len; i++) {
-                        writeFloat(floats[i]);
-                    }
+                    writeFloats(floats, 0, len);
                 }
                 if (unshared) {
-                    instanceCache.put(obj, -1);
+                    uncacheInstance(obj);
                 }
                 return;
             }
             case ID_DOUBLE_ARRAY_CLASS: {
                 if (!unshared) {
-                    instanceCache.put(obj, instanceSeq++);
+                    cacheInstance(obj);
                 }
                 final double[] doubles = (double[]) obj;
                 final int len = doubles.length;
@@ -656,33 +688,27 @@ public class RiverMarshaller extends AbstractMarshaller {
                     write(unshared ? ID_ARRAY_SMALL_UNSHARED : ID_ARRAY_SMALL);
                     write(len);
                     write(ID_PRIM_DOUBLE);
-                    for (int i = 0; i < len; i++) {
-                        writeDouble(doubles[i]);
-                    }
+                    writeDoubles(doubles, 0, len);
                 } else if (len <= 65536) {
                     write(unshared ? ID_ARRAY_MEDIUM_UNSHARED : ID_ARRAY_MEDIUM);
                     writeShort(len);
                     write(ID_PRIM_DOUBLE);
-                    for (int i = 0; i < len; i++) {
-                        writeDouble(doubles[i]);
-                    }
+                    writeDoubles(doubles, 0, len);
                 } else {
                     write(unshared ? ID_ARRAY_LARGE_UNSHARED : ID_ARRAY_LARGE);
-                    writeInt(len);
+                    writeCount(len);
                     write(ID_PRIM_DOUBLE);
-                    for (int i = 0; i < len; i++) {
-                        writeDouble(doubles[i]);
-                    }
+                    writeDoubles(doubles, 0, len);
                 }
                 if (unshared) {
-                    instanceCache.put(obj, -1);
+                    uncacheInstance(obj);
                 }
                 return;
             }
             case ID_CC_ARRAY_LIST:
             case ID_CC_LINKED_LIST:
             case ID_CC_ARRAY_DEQUE: {
-                instanceCache.put(obj, instanceSeq++);
+                cacheInstance(obj);
                 final Collection<?> collection = (Collection<?>) obj;
                 final int len = collection.size();
                 if (len == 0) {
@@ -704,20 +730,20 @@ public class RiverMarshaller extends AbstractMarshaller {
                     }
                 } else {
                     write(unshared ? ID_COLLECTION_LARGE_UNSHARED : ID_COLLECTION_LARGE);
-                    writeInt(len);
+                    writeCount(len);
                     write(id);
                     for (Object o : collection) {
                         doWriteObject(o, false);
                     }
                 }
                 if (unshared) {
-                    instanceCache.put(obj, -1);
+                    uncacheInstance(obj);
                 }
                 return;
             }
             case ID_CC_VECTOR:
             case ID_CC_STACK: {
-                instanceCache.put(obj, instanceSeq++);
+                cacheInstance(obj);
                 final Collection<?> collection = (Collection<?>) obj;
                 synchronized (collection) {
                     final int len = collection.size();
@@ -740,7 +766,7 @@ public class RiverMarshaller extends AbstractMarshaller {
                         }
                     } else {
                         write(unshared ? ID_COLLECTION_LARGE_UNSHARED : ID_COLLECTION_LARGE);
-                        writeInt(len);
+                        writeCount(len);
                         write(id);
                         for (Object o : collection) {
                             doWriteObject(o, false);
@@ -748,7 +774,7 @@ public class RiverMarshaller extends AbstractMarshaller {
                     }
                 }
                 if (unshared) {
-                    instanceCache.put(obj, -1);
+                    uncacheInstance(obj);
                 }
                 return;
             }
@@ -759,13 +785,13 @@ public class RiverMarshaller extends AbstractMarshaller {
                     write(unshared ? ID_COLLECTION_EMPTY_UNSHARED : ID_COLLECTION_EMPTY);
                     write(id);
                     writeClass(getEnumSetElementType(obj));
-                    instanceCache.put(obj, instanceSeq++);
+                    cacheInstance(obj);
                 } else if (len <= 256) {
                     write(unshared ? ID_COLLECTION_SMALL_UNSHARED : ID_COLLECTION_SMALL);
                     write(len);
                     write(id);
                     writeClass(getEnumSetElementType(obj));
-                    instanceCache.put(obj, instanceSeq++);
+                    cacheInstance(obj);
                     for (Object o : elements) {
                         doWriteObject(o, false);
                     }
@@ -774,28 +800,73 @@ public class RiverMarshaller extends AbstractMarshaller {
                     writeShort(len);
                     write(id);
                     writeClass(getEnumSetElementType(obj));
-                    instanceCache.put(obj, instanceSeq++);
+                    cacheInstance(obj);
                     for (Object o : elements) {
                         doWriteObject(o, false);
                     }
                 } else {
                     write(unshared ? ID_COLLECTION_LARGE_UNSHARED : ID_COLLECTION_LARGE);
-                    writeInt(len);
+                    writeCount(len);
                     write(id);
                     writeClass(getEnumSetElementType(obj));
-                    instanceCache.put(obj, instanceSeq++);
+                    cacheInstance(obj);
                     for (Object o : elements) {
                         doWriteObject(o, false);
                     }
                 }
                 if (unshared) {
-                    instanceCache.put(obj, -1);
+                    uncacheInstance(obj);
+                }
+                return;
+            }
+            case ID_CC_HASH_SET: {
+                cacheInstance(obj);
+                final HashSet<?> set = (HashSet<?>) obj;
+                writeCollectionHeader(unshared, set.size(), id);
+                writeFloat(Math.max(MIN_HASH_LOAD_FACTOR, readFloatField(hashMapLoadFactorOffset, readObjectField(hashSetMapOffset, set))));
+                for (Object o : set) {
+                    doWriteObject(o, false);
+                }
+                if (unshared) {
+                    uncacheInstance(obj);
+                }
+                return;
+            }
+            case ID_CC_HASH_MAP:
+            case ID_CC_LINKED_HASH_MAP: {
+                cacheInstance(obj);
+                final HashMap<?, ?> map = (HashMap<?, ?>) obj;
+                writeCollectionHeader(unshared, map.size(), id);
+                writeFloat(Math.max(MIN_HASH_LOAD_FACTOR, readFloatField(hashMapLoadFactorOffset, map)));
+                if (id == ID_CC_LINKED_HASH_MAP) {
+                    writeBoolean(readBooleanField(linkedHashMapAccessOrderOffset, map));
+                }
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    doWriteObject(entry.getKey(), false);
+                    doWriteObject(entry.getValue(), false);
+                }
+                if (unshared) {
+                    uncacheInstance(obj);
+                }
+                return;
+            }
+            case ID_CC_CONCURRENT_HASH_MAP: {
+                cacheInstance(obj);
+                // snapshot the entries so that the count matches even if the map is modified concurrently
+                final Object[] entries = ((ConcurrentHashMap<?, ?>) obj).entrySet().toArray();
+                writeCollectionHeader(unshared, entries.length, id);
+                for (Object entry : entries) {
+                    doWriteObject(((Map.Entry<?, ?>) entry).getKey(), false);
+                    doWriteObject(((Map.Entry<?, ?>) entry).getValue(), false);
+                }
+                if (unshared) {
+                    uncacheInstance(obj);
                 }
                 return;
             }
             case ID_CC_IDENTITY_HASH_MAP:
             case ID_CC_ENUM_MAP: {
-                instanceCache.put(obj, instanceSeq++);
+                cacheInstance(obj);
                 final Map<?, ?> map = (Map<?, ?>) obj;
                 final int len = map.size();
                 if (len == 0) {
@@ -834,7 +905,7 @@ public class RiverMarshaller extends AbstractMarshaller {
                     }
                 } else {
                     write(unshared ? ID_COLLECTION_LARGE_UNSHARED : ID_COLLECTION_LARGE);
-                    writeInt(len);
+                    writeCount(len);
                     write(id);
                     switch (id) {
                         case ID_CC_ENUM_MAP:
@@ -847,7 +918,7 @@ public class RiverMarshaller extends AbstractMarshaller {
                     }
                 }
                 if (unshared) {
-                    instanceCache.put(obj, -1);
+                    uncacheInstance(obj);
                 }
                 return;
             }
@@ -860,40 +931,51 @@ public class RiverMarshaller extends AbstractMarshaller {
                 return;
             }
             case ID_SINGLETON_MAP_OBJECT: {
-                instanceCache.put(obj, instanceSeq++);
+                cacheInstance(obj);
                 write(id);
                 final Map.Entry entry = (Map.Entry) ((Map) obj).entrySet().iterator().next();
                 doWriteObject(entry.getKey(), false);
                 doWriteObject(entry.getValue(), false);
                 if (unshared) {
-                    instanceCache.put(obj, -1);
+                    uncacheInstance(obj);
                 }
                 return;
             }
             case ID_SINGLETON_LIST_OBJECT:
             case ID_SINGLETON_SET_OBJECT: {
-                instanceCache.put(obj, instanceSeq++);
+                cacheInstance(obj);
                 write(id);
                 doWriteObject(((Collection) obj).iterator().next(), false);
                 if (unshared) {
-                    instanceCache.put(obj, -1);
+                    uncacheInstance(obj);
                 }
                 return;
             }
             case ID_REVERSE_ORDER2_OBJECT: {
-                instanceCache.put(obj, instanceSeq++);
+                cacheInstance(obj);
                 write(id);
                 doWriteObject(Protocol.readField(reverseOrder2Field, obj), false);
                 return;
             }
+            case ID_BIT_SET: {
+                cacheInstance(obj);
+                write(id);
+                final byte[] bytes = ((BitSet) obj).toByteArray();
+                writeCount(bytes.length);
+                write(bytes, 0, bytes.length);
+                if (unshared) {
+                    uncacheInstance(obj);
+                }
+                return;
+            }
             case ID_PAIR: {
-                instanceCache.put(obj, instanceSeq++);
+                cacheInstance(obj);
                 write(id);
                 Pair<?, ?> pair = (Pair<?, ?>) obj;
                 doWriteObject(pair.getA(), unshared);
                 doWriteObject(pair.getB(), unshared);
                 if (unshared) {
-                    instanceCache.put(obj, -1);
+                    uncacheInstance(obj);
                 }
                 return;
             }
@@ -904,7 +986,7 @@ public class RiverMarshaller extends AbstractMarshaller {
                     write(ID_EMPTY_LIST_OBJECT);
                     return;
                 }
-                instanceCache.put(obj, instanceSeq++);
+                cacheInstance(obj);
                 if (size <= 256) {
                     write(unshared ? ID_COLLECTION_SMALL_UNSHARED : ID_COLLECTION_SMALL);
                     write(size);
@@ -913,76 +995,76 @@ public class RiverMarshaller extends AbstractMarshaller {
                     writeShort(size);
                 } else {
                     write(unshared ? ID_COLLECTION_LARGE_UNSHARED : ID_COLLECTION_LARGE);
-                    writeInt(size);
+                    writeCount(size);
                 }
                 write(id);
                 doWriteObject(list.iterator().next(), false);
                 if (unshared) {
-                    instanceCache.put(obj, -1);
+                    uncacheInstance(obj);
                 }
                 return;
             }
             case ID_UNMODIFIABLE_COLLECTION: {
-                instanceCache.put(obj, instanceSeq++);
+                cacheInstance(obj);
                 write(id);
                 doWriteObject(Protocol.readField(unmodifiableCollectionField, obj), false);
                 if (unshared) {
-                    instanceCache.put(obj, -1);
+                    uncacheInstance(obj);
                 }
                 return;
             }
             case ID_UNMODIFIABLE_SET: {
-                instanceCache.put(obj, instanceSeq++);
+                cacheInstance(obj);
                 write(id);
                 doWriteObject(Protocol.readField(unmodifiableSetField, obj), false);
                 if (unshared) {
-                    instanceCache.put(obj, -1);
+                    uncacheInstance(obj);
                 }
                 return;
             }
             case ID_UNMODIFIABLE_LIST: {
-                instanceCache.put(obj, instanceSeq++);
+                cacheInstance(obj);
                 write(id);
                 doWriteObject(Protocol.readField(objClass == unmodifiableRandomAccessListClass ? unmodifiableRandomAccessListField : unmodifiableListField, obj), false);
                 if (unshared) {
-                    instanceCache.put(obj, -1);
+                    uncacheInstance(obj);
                 }
                 return;
             }
             case ID_UNMODIFIABLE_MAP: {
-                instanceCache.put(obj, instanceSeq++);
+                cacheInstance(obj);
                 write(id);
                 doWriteObject(Protocol.readField(unmodifiableMapField, obj), false);
                 if (unshared) {
-                    instanceCache.put(obj, -1);
+                    uncacheInstance(obj);
                 }
                 return;
             }
             case ID_UNMODIFIABLE_SORTED_MAP: {
-                instanceCache.put(obj, instanceSeq++);
+                cacheInstance(obj);
                 write(id);
                 doWriteObject(Protocol.readField(unmodifiableSortedMapField, obj), false);
                 if (unshared) {
-                    instanceCache.put(obj, -1);
+                    uncacheInstance(obj);
                 }
                 return;
             }
 
             case ID_UNMODIFIABLE_SORTED_SET: {
-                instanceCache.put(obj, instanceSeq++);
+                cacheInstance(obj);
                 write(id);
                 doWriteObject(Protocol.readField(unmodifiableSortedSetField, obj), false);
                 if (unshared) {
-                    instanceCache.put(obj, -1);
+                    uncacheInstance(obj);
                 }
                 return;
             }
             case ID_UNMODIFIABLE_MAP_ENTRY_SET: {
-                instanceCache.put(obj, instanceSeq++);
+                cacheInstance(obj);
                 write(id);
                 doWriteObject(Protocol.readField(unmodifiableMapEntrySetField, obj), false);
                 if (unshared) {
-                    instanceCache.put(obj, -1);
+                    uncacheInstance(obj);
                 }
                 return;
             }
@@ -992,7 +1074,7 @@ public class RiverMarshaller extends AbstractMarshaller {
     }
 
     private static IdentityIntMap<Class<?>> getBasicClasses(final int configuredVersion) {
-        return configuredVersion == 2 ? BASIC_CLASSES_V2 : configuredVersion == 3 ? BASIC_CLASSES_V3 : BASIC_CLASSES_V4;
+        return configuredVersion == 2 ? BASIC_CLASSES_V2 : configuredVersion == 3 ? BASIC_CLASSES_V3 : configuredVersion == 4 ? BASIC_CLASSES_V4 : BASIC_CLASSES_V5;
     }
 
     private static Class<? extends Enum> getEnumMapKeyType(final Object obj) {
@@ -1009,8 +1091,17 @@ public class RiverMarshaller extends AbstractMarshaller {
 
     private void writeBooleanArray(final boolean[] booleans) throws IOException {
         final int len = booleans.length;
+        final int wc = len & ~63;
+        // pack 64 flags per word; the bytes of each word go out least significant first
+        for (int i = 0; i < wc; i += 64) {
+            long word = 0L;
+            for (int j = 0; j < 64; j++) {
+                if (booleans[i + j]) word |= 1L << j;
+            }
+            writeLong(Long.reverseBytes(word));
+        }
         final int bc = len & ~7;
-        for (int i = 0; i < bc;) {
+        for (int i = wc; i < bc;) {
             write(
                     (booleans[i++] ? 1 : 0)
                             | (booleans[i++] ? 2 : 0)
@@ -1103,6 +1194,10 @@ public class RiverMarshaller extends AbstractMarshaller {
     }
 
     protected void doWriteFields(final SerializableClass info, final Object obj) throws IOException {
+        if (precompiledFields) {
+            FieldSerializer.forClass(info).writeFields(this, obj);
+            return;
+        }
         final SerializableField[] serializableFields = info.getFields();
         for (SerializableField serializableField : serializableFields) {
             try {
@@ -1120,7 +1215,7 @@ public class RiverMarshaller extends AbstractMarshaller {
                         break;
                     }
                     case INT: {
-                        writeInt(serializableField.isAccessible() ? serializableField.getInt(obj) : 0);
+                        writeIntField(serializableField.isAccessible() ? serializableField.getInt(obj) : 0);
                         break;
                     }
                     case CHAR: {
@@ -1128,7 +1223,7 @@ public class RiverMarshaller extends AbstractMarshaller {
                         break;
                     }
                     case LONG: {
-                        writeLong(serializableField.isAccessible() ? serializableField.getLong(obj) : 0);
+                        writeLongField(serializableField.isAccessible() ? serializableField.getLong(obj) : 0);
                         break;
                     }
                     case DOUBLE: {
@@ -1170,7 +1265,7 @@ public class RiverMarshaller extends AbstractMarshaller {
                         break;
                     }
                     case INT: {
-                        writeInt(0);
+                        writeIntField(0);
                         break;
                     }
                     case CHAR: {
@@ -1178,7 +1273,7 @@ public class RiverMarshaller extends AbstractMarshaller {
                         break;
                     }
                     case LONG: {
-                        writeLong(0L);
+                        writeLongField(0L);
                         break;
                     }
                     case DOUBLE: {
@@ -1216,7 +1311,7 @@ public class RiverMarshaller extends AbstractMarshaller {
         } else {
             write(ID_PROXY_CLASS);
             final String[] names = classResolver.getProxyInterfaces(objClass);
-            writeInt(names.length);
+            writeCount(names.length);
             for (String name : names) {
                 writeString(name);
             }
@@ -1278,6 +1373,7 @@ public class RiverMarshaller extends AbstractMarshaller {
     private static final IdentityIntMap<Class<?>> BASIC_CLASSES_V2;
     private static final IdentityIntMap<Class<?>> BASIC_CLASSES_V3;
     private static final IdentityIntMap<Class<?>> BASIC_CLASSES_V4;
+    private static final IdentityIntMap<Class<?>> BASIC_CLASSES_V5;
 
     private static final Field ENUM_SET_ELEMENT_TYPE_FIELD;
     private static final Field ENUM_SET_VALUES_FIELD;
@@ -1369,7 +1465,21 @@ public class RiverMarshaller extends AbstractMarshaller {
         map.put(unmodifiableSortedMapClass, ID_UNMODIFIABLE_SORTED_MAP);
         map.put(unmodifiableMapEntrySetClass, ID_UNMODIFIABLE_MAP_ENTRY_SET);
 
-        BASIC_CLASSES_V4 = map;
+        BASIC_CLASSES_V4 = map.clone();
+
+        map.put(BitSet.class, ID_BIT_SET);
+        map.put(ConcurrentHashMap.class, ID_CC_CONCURRENT_HASH_MAP);
+        if (hashMapLoadFactorOffset != -1) {
+            map.put(HashMap.class, ID_CC_HASH_MAP);
+            if (linkedHashMapAccessOrderOffset != -1) {
+                map.put(LinkedHashMap.class, ID_CC_LINKED_HASH_MAP);
+            }
+            if (hashSetMapOffset != -1) {
+                map.put(HashSet.class, ID_CC_HASH_SET);
+            }
+        }
+
+        BASIC_CLASSES_V5 = map;
 
         final SecurityManager sm = getSecurityManager();
         // this solution will work for any JDK which conforms to the serialization spec of Enum; unless they
@@ -1472,7 +1582,8 @@ public class RiverMarshaller extends AbstractMarshaller {
             i = serialClassCache.get(objClass, -1);
         } else {
             i = getBasicClasses(configuredVersion).get(objClass, -1);
-            if (i != -1) {
+            // formerly generic classes are only known as object types; their class descriptors are written in full
+            if (i != -1 && ! isFormerlyGeneric(i)) {
                 write(i);
                 return true;
             }
@@ -1491,7 +1602,7 @@ public class RiverMarshaller extends AbstractMarshaller {
                 writeShort(diff);
             } else {
                 write(ID_REPEAT_CLASS_FAR);
-                writeInt(i);
+                writeCount(i);
             }
             return true;
         }
@@ -1528,7 +1639,7 @@ public class RiverMarshaller extends AbstractMarshaller {
             classResolver.annotateClass(this, objClass);
             final SerializableField[] fields = info.getFields();
             final int cnt = fields.length;
-            writeInt(cnt);
+            writeCount(cnt);
             for (int i = 0; i < cnt; i++) {
                 SerializableField field = fields[i];
                 if (configuredVersion >= 4) {
@@ -1594,6 +1705,59 @@ public class RiverMarshaller extends AbstractMarshaller {
         writeObject(externalizer);
     }
 
+    /**
+     * Write the members in chunks of up to 256, so that only one chunk is ever held; older protocol versions, which
+     * have no chunked encoding, collect the members into a list first.  With collection stream reset, the instance
+     * cache is rolled back to the start of the collection after each chunk, as the reader's is.
+     */
+    public void writeCollectionStream(final Iterator<?> members) throws IOException {
+        if (configuredVersion < 5) {
+            final ArrayList<Object> list = new ArrayList<Object>();
+            while (members.hasNext()) {
+                list.add(members.next());
+            }
+            writeObject(list);
+            return;
+        }
+        final boolean reset = collectionStreamReset;
+        write(reset ? ID_COLLECTION_CHUNKED_RESET : ID_COLLECTION_CHUNKED);
+        write(ID_CC_ARRAY_LIST);
+        // the list takes an instance slot when read even though there is no object here to refer back to
+        instanceSeq++;
+        final int markSize = instanceCache.size();
+        final int markSeq = instanceSeq;
+        final Object[] chunk = new Object[0x100];
+        int idx = 0;
+        for (;;) {
+            int len = 0;
+            while (len < chunk.length && members.hasNext()) {
+                chunk[len ++] = members.next();
+            }
+            writeCount(len);
+            if (len == 0) {
+                return;
+            }
+            for (int i = 0; i < len; i ++) {
+                try {
+                    // same trace information and exception listener handling as any other written object
+                    writeObject(chunk[i]);
+                } catch (IOException e) {
+                    TraceInformation.addIndexInformation(e, idx, -1, TraceInformation.IndexType.ELEMENT);
+                    throw e;
+                } catch (RuntimeException e) {
+                    TraceInformation.addIndexInformation(e, idx, -1, TraceInformation.IndexType.ELEMENT);
+                    throw e;
+                }
+                chunk[i] = null;
+                idx ++;
+            }
+            if (reset) {
+                instanceCache.truncate(markSize, markSeq, -1);
+                instanceSeq = markSeq;
+            }
+        }
+    }
+
     public void clearInstanceCache() throws IOException {
         instanceCache.clear();
         instanceSeq = 0;
@@ -1603,6 +1767,12 @@ public class RiverMarshaller extends AbstractMarshaller {
     }
 
     public void clearClassCache() throws IOException {
+        if (finishing && classSeq <= sessionClassLimit) {
+            // keep the classes for the next stream of this session
+            instanceCache.clear();
+            instanceSeq = 0;
+            return;
+        }
         classCache.clear();
         serialClassCache.clear();
         externalizers.clear();
@@ -1617,19 +1787,91 @@ public class RiverMarshaller extends AbstractMarshaller {
     public void start(final ByteOutput byteOutput) throws IOException {
         super.start(byteOutput);
         writeByte(configuredVersion);
+        if (configuredVersion >= 5) {
+            writeByte((varIntFields ? FLAG_VAR_INT_FIELDS : 0) | (classSeq > 0 ? FLAG_SESSION_CLASSES : 0));
+        }
+    }
+
+    public void finish() throws IOException {
+        if (graphSizeHistory != null && byteOutput != null) {
+            graphSizeHistory.record(instanceSeq, classSeq);
+        }
+        finishing = true;
+        try {
+            super.finish();
+        } finally {
+            finishing = false;
+        }
     }
 
     private void writeString(String string) throws IOException {
-        writeInt(string.length());
-        shallowFlush();
-        UTFUtils.writeUTFBytes(byteOutput, string);
+        writeCount(string.length());
+        UTFUtils.writeUTFBytes(this, string);
     }
 
     // Replace writeUTF with a faster, non-scanning version
 
     public void writeUTF(final String string) throws IOException {
-        writeInt(string.length());
-        shallowFlush();
-        UTFUtils.writeUTFBytes(byteOutput, string);
+        writeCount(string.length());
+        UTFUtils.writeUTFBytes(this, string);
+    }
+
+    /**
+     * Write a non-negative length, count, or back-reference index.  From protocol version 5 on, these are written as
+     * unsigned variable-length integers; earlier versions always use four bytes.
+     *
+     * @param v the value to write
+     * @throws IOException if an I/O error occurs
+     */
+    void writeCount(final int v) throws IOException {
+        if (configuredVersion >= 5) {
+            writeVarInt(v);
+        } else {
+            writeInt(v);
+        }
+    }
+
+    /**
+     * Write an {@code int} field value, zig-zag variable-length encoded if the stream was started with that option.
+     *
+     * @param v the value to write
+     * @throws IOException if an I/O error occurs
+     */
+    void writeIntField(final int v) throws IOException {
+        if (varIntFields) {
+            writeVarInt(v << 1 ^ v >> 31);
+        } else {
+            writeInt(v);
+        }
+    }
+
+    /**
+     * Write a {@code long} field value, zig-zag variable-length encoded if the stream was started with that option.
+     *
+     * @param v the value to write
+     * @throws IOException if an I/O error occurs
+     */
+    void writeLongField(final long v) throws IOException {
+        if (varIntFields) {
+            writeVarLong(v << 1 ^ v >> 63);
+        } else {
+            writeLong(v);
+        }
+    }
+
+    private void writeVarInt(int v) throws IOException {
+        while ((v & ~0x7f) != 0) {
+            write(v & 0x7f | 0x80);
+            v >>>= 7;
+        }
+        write(v);
+    }
+
+    private void writeVarLong(long v) throws IOException {
+        while ((v & ~0x7fL) != 0) {
+            write((int) v & 0x7f | 0x80);
+            v >>>= 7;
+        }
+        write((int) v);
     }
 }
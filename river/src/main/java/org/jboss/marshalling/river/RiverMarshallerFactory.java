@@ -28,12 +28,17 @@ import org.jboss.marshalling.reflect.SerializableClassRegistry;
 import org.jboss.marshalling.MarshallingConfiguration;
 import java.io.IOException;
 import java.security.PrivilegedAction;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 /**
  * The River marshaller factory implementation.
  */
 public class RiverMarshallerFactory extends AbstractMarshallerFactory {
     private final SerializableClassRegistry registry;
+    private volatile ClassDescriptorCache classDescriptorCache;
+    // keyed by configuration identity
+    private final Map<MarshallingConfiguration, GraphSizeHistory> graphSizeHistories = new WeakHashMap<MarshallingConfiguration, GraphSizeHistory>();
 
     /**
      * Construct a new instance of a River marshaller factory.
@@ -60,6 +65,29 @@ public class RiverMarshallerFactory extends AbstractMarshallerFactory {
         return new RiverMarshaller(this, registry, configuration);
     }
 
+    ClassDescriptorCache getClassDescriptorCache(final int maxSize) {
+        ClassDescriptorCache classDescriptorCache = this.classDescriptorCache;
+        if (classDescriptorCache == null) {
+            synchronized (this) {
+                classDescriptorCache = this.classDescriptorCache;
+                if (classDescriptorCache == null) {
+                    this.classDescriptorCache = classDescriptorCache = new ClassDescriptorCache(maxSize);
+                }
+            }
+        }
+        return classDescriptorCache;
+    }
+
+    GraphSizeHistory getGraphSizeHistory(final MarshallingConfiguration configuration) {
+        synchronized (graphSizeHistories) {
+            GraphSizeHistory history = graphSizeHistories.get(configuration);
+            if (history == null) {
+                graphSizeHistories.put(configuration, history = new GraphSizeHistory(configuration.getInstanceCount(), configuration.getClassCount()));
+            }
+            return history;
+        }
+    }
+
     protected int getDefaultVersion() {
         return 4;
     }
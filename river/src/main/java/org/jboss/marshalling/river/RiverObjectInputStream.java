@@ -145,11 +145,11 @@ class RiverObjectInputStream extends MarshallerObjectInputStream {
                         break;
                     }
                     case INT: {
-                        readFields[i] = new IntReadField(field, unmarshaller.readInt());
+                        readFields[i] = new IntReadField(field, unmarshaller.readIntField());
                         break;
                     }
                     case LONG: {
-                        readFields[i] = new LongReadField(field, unmarshaller.readLong());
+                        readFields[i] = new LongReadField(field, unmarshaller.readLongField());
                         break;
                     }
                     case OBJECT: {
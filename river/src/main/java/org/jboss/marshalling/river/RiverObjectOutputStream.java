@@ -119,11 +119,19 @@ class RiverObjectOutputStream extends MarshallerObjectOutputStream {
                         break;
                     }
                     case INT: {
-                        fields[i] = new IntFieldPutter();
+                        fields[i] = new IntFieldPutter() {
+                            public void write(final Marshaller marshaller) throws IOException {
+                                RiverObjectOutputStream.this.marshaller.writeIntField(getInt());
+                            }
+                        };
                         break;
                     }
                     case LONG: {
-                        fields[i] = new LongFieldPutter();
+                        fields[i] = new LongFieldPutter() {
+                            public void write(final Marshaller marshaller) throws IOException {
+                                RiverObjectOutputStream.this.marshaller.writeLongField(getLong());
+                            }
+                        };
                         break;
                     }
                     case OBJECT: {
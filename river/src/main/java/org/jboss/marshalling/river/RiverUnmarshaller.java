@@ -29,6 +29,7 @@ import java.io.InvalidObjectException;
 import java.io.NotSerializableException;
 import java.io.ObjectInputValidation;
 import java.io.StreamCorruptedException;
+import java.io.UncheckedIOException;
 import java.lang.reflect.Array;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationHandler;
@@ -36,8 +37,10 @@ import java.lang.reflect.Proxy;
 import java.security.PrivilegedAction;
 import java.security.PrivilegedActionException;
 import java.security.PrivilegedExceptionAction;
+import java.util.AbstractMap;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -45,11 +48,13 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.SortedSet;
@@ -69,6 +74,7 @@ import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CopyOnWriteArraySet;
 import org.jboss.marshalling.AbstractUnmarshaller;
 import org.jboss.marshalling.ByteInput;
+import org.jboss.marshalling.ClassResolver;
 import org.jboss.marshalling.Externalizer;
 import org.jboss.marshalling.MarshallingConfiguration;
 import org.jboss.marshalling.Pair;
@@ -88,10 +94,18 @@ import sun.misc.Unsafe;
  */
 public class RiverUnmarshaller extends AbstractUnmarshaller {
 
-    private final ArrayList<Object> instanceCache;
+    private final ReferenceTable instanceCache;
     private final ArrayList<ClassDescriptor> classCache;
     private final SerializableClassRegistry registry;
     private int version;
+    private boolean varIntFields;
+    private final boolean precompiledFields;
+    private final ClassDescriptorCache classDescriptorCache;
+    // the configured resolver, or null for the per-instance default resolver
+    private final ClassResolver configuredClassResolver;
+    private final int sessionClassLimit;
+    private boolean finishing;
+    private final GraphSizeHistory graphSizeHistory;
     private int depth;
     private BlockUnmarshaller blockUnmarshaller;
     private RiverObjectInputStream objectInputStream;
@@ -99,6 +113,8 @@ public class RiverUnmarshaller extends AbstractUnmarshaller {
     private int validatorSeq;
 
     private static final Object UNRESOLVED = new Object();
+    // collection lengths up to this are presized without checking the available input
+    private static final int MAX_UNBACKED_PRESIZE = 0x1000;
     private static final Field proxyInvocationHandler;
     private static final long proxyInvocationHandlerOffset;
 
@@ -131,8 +147,19 @@ public class RiverUnmarshaller extends AbstractUnmarshaller {
     protected RiverUnmarshaller(final RiverMarshallerFactory marshallerFactory, final SerializableClassRegistry registry, final MarshallingConfiguration configuration) {
         super(marshallerFactory, configuration);
         this.registry = registry;
-        instanceCache = new ArrayList<Object>(configuration.getInstanceCount());
-        classCache = new ArrayList<ClassDescriptor>(configuration.getClassCount());
+        precompiledFields = configuration.isPrecompiledFields();
+        final int classDescriptorCacheSize = configuration.getClassDescriptorCacheSize();
+        classDescriptorCache = classDescriptorCacheSize == 0 ? null : marshallerFactory.getClassDescriptorCache(classDescriptorCacheSize);
+        configuredClassResolver = configuration.getClassResolver();
+        sessionClassLimit = configuration.getSessionClassLimit();
+        graphSizeHistory = configuration.isAdaptiveCounts() ? marshallerFactory.getGraphSizeHistory(configuration) : null;
+        if (graphSizeHistory == null) {
+            instanceCache = new ReferenceTable(configuration.getInstanceCount());
+            classCache = new ArrayList<ClassDescriptor>(configuration.getClassCount());
+        } else {
+            instanceCache = new ReferenceTable(graphSizeHistory.getInstanceHint());
+            classCache = new ArrayList<ClassDescriptor>(graphSizeHistory.getClassHint());
+        }
     }
 
     public void clearInstanceCache() throws IOException {
@@ -141,6 +168,10 @@ public class RiverUnmarshaller extends AbstractUnmarshaller {
 
     public void clearClassCache() throws IOException {
         clearInstanceCache();
+        if (finishing && classCache.size() <= sessionClassLimit) {
+            // keep the classes for the next stream of this session
+            return;
+        }
         classCache.clear();
     }
 
@@ -149,7 +180,15 @@ public class RiverUnmarshaller extends AbstractUnmarshaller {
     }
 
     public void finish() throws IOException {
-        super.finish();
+        if (graphSizeHistory != null && byteInput != null) {
+            graphSizeHistory.record(instanceCache.size(), classCache.size());
+        }
+        finishing = true;
+        try {
+            super.finish();
+        } finally {
+            finishing = false;
+        }
         blockUnmarshaller = null;
         objectInputStream = null;
     }
@@ -230,16 +269,241 @@ public class RiverUnmarshaller extends AbstractUnmarshaller {
     protected Object doReadObject(final boolean unshared) throws ClassNotFoundException, IOException {
         final Object obj = doReadObject(readUnsignedByte(), unshared, false);
         if (depth == 0) {
-            final SortedSet<Validator> validators = this.validators;
-            if (validators != null) {
-                this.validators = null;
-                validatorSeq = 0;
-                for (Validator validator : validators) {
-                    validator.getValidation().validateObject();
+            runValidators();
+        }
+        return obj;
+    }
+
+    private void runValidators() throws InvalidObjectException {
+        final SortedSet<Validator> validators = this.validators;
+        if (validators != null) {
+            this.validators = null;
+            validatorSeq = 0;
+            for (Validator validator : validators) {
+                validator.getValidation().validateObject();
+            }
+        }
+    }
+
+    /**
+     * Read a collection or map member by member.  The collection itself is never constructed, so its instance slot stays
+     * unresolved (a member referring back to it is an error) and it is not passed to the object resolver; members
+     * are read and resolved as usual, and remain in the instance cache for later back-references until the writer
+     * clears it, or only until the end of their chunk if the writer resets collection streams.  Objects not written
+     * with one of the collection encodings are read whole and iterated over.
+     */
+    @SuppressWarnings({ "unchecked" })
+    public Iterator<Object> readCollectionStream() throws ClassNotFoundException, IOException {
+        int leadByte = readUnsignedByte();
+        for (;;) switch (leadByte) {
+            case ID_CLEAR_CLASS_CACHE: {
+                classCache.clear();
+                instanceCache.clear();
+                leadByte = readUnsignedByte();
+                continue;
+            }
+            case ID_CLEAR_INSTANCE_CACHE: {
+                instanceCache.clear();
+                leadByte = readUnsignedByte();
+                continue;
+            }
+            case ID_COLLECTION_EMPTY:
+            case ID_COLLECTION_EMPTY_UNSHARED:
+            case ID_COLLECTION_SMALL:
+            case ID_COLLECTION_SMALL_UNSHARED:
+            case ID_COLLECTION_MEDIUM:
+            case ID_COLLECTION_MEDIUM_UNSHARED:
+            case ID_COLLECTION_LARGE:
+            case ID_COLLECTION_LARGE_UNSHARED: {
+                return readCollectionStream(leadByte);
+            }
+            case ID_COLLECTION_CHUNKED:
+            case ID_COLLECTION_CHUNKED_RESET: {
+                readChunkedCollectionType();
+                instanceCache.add(UNRESOLVED);
+                return new StreamingIterator(0, false, true, leadByte == ID_COLLECTION_CHUNKED_RESET);
+            }
+            default: {
+                final Object obj = doReadObject(leadByte, false, false);
+                runValidators();
+                if (obj instanceof Collection) {
+                    return ((Collection<Object>) obj).iterator();
+                } else if (obj instanceof Map) {
+                    return (Iterator) ((Map<?, ?>) obj).entrySet().iterator();
+                } else {
+                    throw new InvalidObjectException("Expected a collection or map, but read " + (obj == null ? "null" : obj.getClass().getName()));
                 }
             }
         }
-        return obj;
+    }
+
+    private Iterator<Object> readCollectionStream(final int leadByte) throws ClassNotFoundException, IOException {
+        final int len;
+        switch (leadByte) {
+            case ID_COLLECTION_EMPTY:
+            case ID_COLLECTION_EMPTY_UNSHARED: {
+                len = 0;
+                break;
+            }
+            case ID_COLLECTION_SMALL:
+            case ID_COLLECTION_SMALL_UNSHARED: {
+                int b = readUnsignedByte();
+                len = b == 0 ? 0x100 : b;
+                break;
+            }
+            case ID_COLLECTION_MEDIUM:
+            case ID_COLLECTION_MEDIUM_UNSHARED: {
+                int b = readUnsignedShort();
+                len = b == 0 ? 0x10000 : b;
+                break;
+            }
+            default: {
+                len = readCount();
+                if (len < 0) {
+                    throw new StreamCorruptedException("Invalid length value for collection in stream (" + len + ")");
+                }
+                break;
+            }
+        }
+        final int id = readUnsignedByte();
+        switch (id) {
+            case ID_CC_HASH_SET:
+            case ID_CC_HASH_MAP: {
+                if (version >= 5) {
+                    readLoadFactor();
+                }
+                break;
+            }
+            case ID_CC_LINKED_HASH_MAP: {
+                if (version >= 5) {
+                    readLoadFactor();
+                    readBoolean();
+                }
+                break;
+            }
+            case ID_CC_ENUM_SET_PROXY: {
+                doReadClassDescriptor(readUnsignedByte(), true);
+                break;
+            }
+            case ID_CC_ARRAY_LIST:
+            case ID_CC_LINKED_HASH_SET:
+            case ID_CC_LINKED_LIST:
+            case ID_CC_VECTOR:
+            case ID_CC_STACK:
+            case ID_CC_ARRAY_DEQUE:
+            case ID_CC_HASHTABLE:
+            case ID_CC_IDENTITY_HASH_MAP:
+            case ID_CC_CONCURRENT_HASH_MAP:
+            case ID_CC_TREE_SET:
+            case ID_CC_TREE_MAP:
+            case ID_CC_ENUM_MAP:
+            case ID_CC_NCOPIES: {
+                break;
+            }
+            default: {
+                throw new StreamCorruptedException("Unexpected byte found when reading a collection type: " + id);
+            }
+        }
+        instanceCache.add(UNRESOLVED);
+        switch (id) {
+            case ID_CC_TREE_SET:
+            case ID_CC_TREE_MAP: {
+                doReadNestedObject(false, id == ID_CC_TREE_SET ? "java.util.TreeSet comparator" : "java.util.TreeMap comparator");
+                break;
+            }
+            case ID_CC_ENUM_MAP: {
+                doReadClassDescriptor(readUnsignedByte(), true);
+                break;
+            }
+            case ID_CC_NCOPIES: {
+                final Object member = doReadNestedObject(false, "n-copies member object");
+                runValidators();
+                return Collections.nCopies(len, member).iterator();
+            }
+        }
+        switch (id) {
+            case ID_CC_HASH_MAP:
+            case ID_CC_LINKED_HASH_MAP:
+            case ID_CC_HASHTABLE:
+            case ID_CC_IDENTITY_HASH_MAP:
+            case ID_CC_CONCURRENT_HASH_MAP:
+            case ID_CC_TREE_MAP:
+            case ID_CC_ENUM_MAP: {
+                return new StreamingIterator(len, true, false, false);
+            }
+            default: {
+                return new StreamingIterator(len, false, false, false);
+            }
+        }
+    }
+
+    private final class StreamingIterator implements Iterator<Object> {
+        private final boolean map;
+        private boolean chunked;
+        // the instance cache size to return to after each chunk, or -1 to keep the members
+        private final int resetSize;
+        private int end;
+        private int idx;
+
+        StreamingIterator(final int len, final boolean map, final boolean chunked, final boolean reset) {
+            end = len;
+            this.map = map;
+            this.chunked = chunked;
+            resetSize = reset ? instanceCache.size() : -1;
+        }
+
+        public boolean hasNext() {
+            if (idx < end) {
+                return true;
+            }
+            if (! chunked) {
+                return false;
+            }
+            if (resetSize != -1) {
+                instanceCache.truncate(resetSize);
+            }
+            final int len;
+            try {
+                len = readCount();
+                if (len < 0) {
+                    throw new StreamCorruptedException("Invalid length value for collection chunk in stream (" + len + ")");
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (len == 0) {
+                chunked = false;
+                return false;
+            }
+            end = idx + len;
+            return true;
+        }
+
+        public Object next() {
+            if (! hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final int idx = this.idx;
+            final int size = chunked ? -1 : end;
+            try {
+                final Object next;
+                if (map) {
+                    final Object key = doReadMapObject(false, idx, size, true, false);
+                    next = new AbstractMap.SimpleImmutableEntry<Object, Object>(key, doReadMapObject(false, idx, size, false, false));
+                } else {
+                    next = doReadCollectionObject(false, idx, size, false);
+                }
+                this.idx = idx + 1;
+                runValidators();
+                return next;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (ClassNotFoundException e) {
+                final InvalidClassException ice = new InvalidClassException(e.getMessage());
+                ice.initCause(e);
+                throw new UncheckedIOException(ice);
+            }
+        }
     }
 
     Object doReadObject(final boolean unshared, final boolean discardMissing) throws IOException, ClassNotFoundException {
@@ -258,11 +522,10 @@ public class RiverUnmarshaller extends AbstractUnmarshaller {
                     if (unshared) {
                         throw new InvalidObjectException("Attempt to read a backreference as unshared");
                     }
-                    final int index = readInt();
-                    try {
+                    final int index = readCount();
+                    if (instanceCache.isValid(index)) {
                         final Object obj = instanceCache.get(index);
                         if (obj != UNRESOLVED) return obj;
-                    } catch (IndexOutOfBoundsException e) {
                     }
                     throw new InvalidObjectException("Attempt to read a backreference with an invalid ID (absolute " + index + ")");
                 }
@@ -271,10 +534,10 @@ public class RiverUnmarshaller extends AbstractUnmarshaller {
                         throw new InvalidObjectException("Attempt to read a backreference as unshared");
                     }
                     final int index = readByte() | 0xffffff00;
-                    try {
-                        final Object obj = instanceCache.get(index + instanceCache.size());
+                    final int absolute = index + instanceCache.size();
+                    if (instanceCache.isValid(absolute)) {
+                        final Object obj = instanceCache.get(absolute);
                         if (obj != UNRESOLVED) return obj;
-                    } catch (IndexOutOfBoundsException e) {
                     }
                     throw new InvalidObjectException("Attempt to read a backreference with an invalid ID (relative near " + index + ")");
                 }
@@ -283,10 +546,10 @@ public class RiverUnmarshaller extends AbstractUnmarshaller {
                         throw new InvalidObjectException("Attempt to read a backreference as unshared");
                     }
                     final int index = readShort() | 0xffff0000;
-                    try {
-                        final Object obj = instanceCache.get(index + instanceCache.size());
+                    final int absolute = index + instanceCache.size();
+                    if (instanceCache.isValid(absolute)) {
+                        final Object obj = instanceCache.get(absolute);
                         if (obj != UNRESOLVED) return obj;
-                    } catch (IndexOutOfBoundsException e) {
                     }
                     throw new InvalidObjectException("Attempt to read a backreference with an invalid ID (relative nearish " + index + ")");
                 }
@@ -317,7 +580,7 @@ public class RiverUnmarshaller extends AbstractUnmarshaller {
                 }
                 case ID_STRING_LARGE: {
                     // ignore unshared setting
-                    int length = readInt();
+                    int length = readCount();
                     if (length <= 0) {
                         throw new StreamCorruptedException("Invalid length value for string in stream (" + length + ")");
                     }
@@ -330,7 +593,7 @@ public class RiverUnmarshaller extends AbstractUnmarshaller {
                     if (unshared != (leadByte == ID_ARRAY_EMPTY_UNSHARED)) {
                         throw sharedMismatch();
                     }
-                    final ArrayList<Object> instanceCache = this.instanceCache;
+                    final ReferenceTable instanceCache = this.instanceCache;
                     final int idx = instanceCache.size();
                     final Object obj = Array.newInstance(doReadClassDescriptor(readUnsignedByte(), true).getType(), 0);
                     instanceCache.add(obj);
@@ -363,7 +626,7 @@ public class RiverUnmarshaller extends AbstractUnmarshaller {
                     if (unshared != (leadByte == ID_ARRAY_LARGE_UNSHARED)) {
                         throw sharedMismatch();
                     }
-                    final int len = readInt();
+                    final int len = readCount();
                     if (len <= 0) {
                         throw new StreamCorruptedException("Invalid length value for array in stream (" + len + ")");
                     }
@@ -739,7 +1002,7 @@ public class RiverUnmarshaller extends AbstractUnmarshaller {
                         }
                         case ID_COLLECTION_LARGE:
                         case ID_COLLECTION_LARGE_UNSHARED: {
-                            len = readInt();
+                            len = readCount();
                             break;
                         }
                         default: {
@@ -749,13 +1012,17 @@ public class RiverUnmarshaller extends AbstractUnmarshaller {
                     final int id = readUnsignedByte();
                     switch (id) {
                         case ID_CC_ARRAY_LIST: {
-                            return replace(readCollectionData(unshared, -1, len, new ArrayList(len), discardMissing));
+                            return replace(readCollectionData(unshared, -1, len, new ArrayList(presize(len)), discardMissing));
                         }
                         case ID_CC_HASH_SET: {
-                            return replace(readCollectionData(unshared, -1, len, new HashSet(len), discardMissing));
+                            if (version >= 5) {
+                                final float loadFactor = readLoadFactor();
+                                return replace(readCollectionData(unshared, -1, len, new HashSet(hashCapacity(len, loadFactor), loadFactor), discardMissing));
+                            }
+                            return replace(readCollectionData(unshared, -1, len, new HashSet(hashCapacity(len, 0.75f)), discardMissing));
                         }
                         case ID_CC_LINKED_HASH_SET: {
-                            return replace(readCollectionData(unshared, -1, len, new LinkedHashSet(len), discardMissing));
+                            return replace(readCollectionData(unshared, -1, len, new LinkedHashSet(hashCapacity(len, 0.75f)), discardMissing));
                         }
                         case ID_CC_LINKED_LIST: {
                             return replace(readCollectionData(unshared, -1, len, new LinkedList(), discardMissing));
@@ -772,26 +1039,40 @@ public class RiverUnmarshaller extends AbstractUnmarshaller {
                             return replace(readCollectionData(unshared, -1, len, EnumSet.noneOf(elementType), discardMissing));
                         }
                         case ID_CC_VECTOR: {
-                            return replace(readCollectionData(unshared, -1, len, new Vector(len), discardMissing));
+                            return replace(readCollectionData(unshared, -1, len, new Vector(presize(len)), discardMissing));
                         }
                         case ID_CC_STACK: {
-                            return replace(readCollectionData(unshared, -1, len, new Stack(), discardMissing));
+                            final Stack stack = new Stack();
+                            stack.ensureCapacity(presize(len));
+                            return replace(readCollectionData(unshared, -1, len, stack, discardMissing));
                         }
                         case ID_CC_ARRAY_DEQUE: {
-                            return replace(readCollectionData(unshared, -1, len, new ArrayDeque(len), discardMissing));
+                            return replace(readCollectionData(unshared, -1, len, new ArrayDeque(presize(len)), discardMissing));
                         }
 
                         case ID_CC_HASH_MAP: {
-                            return replace(readMapData(unshared, -1, len, new HashMap(len), discardMissing));
+                            if (version >= 5) {
+                                final float loadFactor = readLoadFactor();
+                                return replace(readMapData(unshared, -1, len, new HashMap(hashCapacity(len, loadFactor), loadFactor), discardMissing));
+                            }
+                            return replace(readMapData(unshared, -1, len, new HashMap(hashCapacity(len, 0.75f)), discardMissing));
                         }
                         case ID_CC_HASHTABLE: {
-                            return replace(readMapData(unshared, -1, len, new Hashtable(len), discardMissing));
+                            return replace(readMapData(unshared, -1, len, new Hashtable(hashCapacity(len, 0.75f)), discardMissing));
                         }
                         case ID_CC_IDENTITY_HASH_MAP: {
-                            return replace(readMapData(unshared, -1, len, new IdentityHashMap(len), discardMissing));
+                            return replace(readMapData(unshared, -1, len, new IdentityHashMap(presize(len)), discardMissing));
                         }
                         case ID_CC_LINKED_HASH_MAP: {
-                            return replace(readMapData(unshared, -1, len, new LinkedHashMap(len), discardMissing));
+                            if (version >= 5) {
+                                final float loadFactor = readLoadFactor();
+                                final boolean accessOrder = readBoolean();
+                                return replace(readMapData(unshared, -1, len, new LinkedHashMap(hashCapacity(len, loadFactor), loadFactor, accessOrder), discardMissing));
+                            }
+                            return replace(readMapData(unshared, -1, len, new LinkedHashMap(hashCapacity(len, 0.75f)), discardMissing));
+                        }
+                        case ID_CC_CONCURRENT_HASH_MAP: {
+                            return replace(readMapData(unshared, -1, len, new ConcurrentHashMap(presize(len)), discardMissing));
                         }
                         case ID_CC_TREE_MAP: {
                             int idx = instanceCache.size();
@@ -822,6 +1103,23 @@ public class RiverUnmarshaller extends AbstractUnmarshaller {
                     }
                 }
 
+                case ID_COLLECTION_CHUNKED:
+                case ID_COLLECTION_CHUNKED_RESET: {
+                    readChunkedCollectionType();
+                    return replace(readChunkedCollectionData(unshared, new ArrayList(), leadByte == ID_COLLECTION_CHUNKED_RESET, discardMissing));
+                }
+
+                case ID_BIT_SET: {
+                    final int len = readCount();
+                    if (len < 0) {
+                        throw new StreamCorruptedException("Invalid length value for bit set in stream (" + len + ")");
+                    }
+                    final byte[] bytes = new byte[len];
+                    readFully(bytes);
+                    final Object resolvedObject = objectResolver.readResolve(BitSet.valueOf(bytes));
+                    instanceCache.add(unshared ? UNRESOLVED : resolvedObject);
+                    return replace(resolvedObject);
+                }
                 case ID_PAIR: {
                     final int idx = instanceCache.size();
                     instanceCache.add(UNRESOLVED);
@@ -859,9 +1157,38 @@ public class RiverUnmarshaller extends AbstractUnmarshaller {
         }
     }
 
+    private float readLoadFactor() throws IOException {
+        final float loadFactor = readFloat();
+        // a tiny load factor would size the table far beyond the number of members
+        if (! (loadFactor >= MIN_HASH_LOAD_FACTOR) || Float.isInfinite(loadFactor)) {
+            throw new StreamCorruptedException("Invalid load factor in stream (" + loadFactor + ")");
+        }
+        return loadFactor;
+    }
+
+    /**
+     * Get the capacity to allocate up front for a collection with the given number of members.  Lengths up to a small
+     * bound are trusted outright; beyond it, a length is trusted only as far as the input already available could hold
+     * that many members (each takes at least one byte), so that a hostile length cannot force a huge allocation.
+     *
+     * @param len the length declared in the stream
+     * @return the capacity to allocate
+     */
+    private int presize(final int len) throws IOException {
+        if (len <= MAX_UNBACKED_PRESIZE) {
+            return len;
+        }
+        return Math.max(MAX_UNBACKED_PRESIZE, Math.min(len, available()));
+    }
+
+    // the capacity at which a hash collection holds the given number of entries without resizing, bounded like presize
+    private int hashCapacity(final int len, final float loadFactor) throws IOException {
+        return presize((int) Math.min(Integer.MAX_VALUE, (long) Math.ceil(len / (double) loadFactor)));
+    }
+
     @SuppressWarnings({ "unchecked" })
     private Object readCollectionData(final boolean unshared, int cacheIdx, final int len, final Collection target, final boolean discardMissing) throws ClassNotFoundException, IOException {
-        final ArrayList<Object> instanceCache = this.instanceCache;
+        final ReferenceTable instanceCache = this.instanceCache;
         final int idx;
 
         if (cacheIdx == -1) {
@@ -881,11 +1208,42 @@ public class RiverUnmarshaller extends AbstractUnmarshaller {
         return resolvedObject;
     }
 
+    private void readChunkedCollectionType() throws IOException {
+        final int id = readUnsignedByte();
+        if (id != ID_CC_ARRAY_LIST) {
+            throw new StreamCorruptedException("Unexpected byte found when reading a chunked collection type: " + id);
+        }
+    }
+
+    @SuppressWarnings({ "unchecked" })
+    private Object readChunkedCollectionData(final boolean unshared, final Collection target, final boolean reset, final boolean discardMissing) throws ClassNotFoundException, IOException {
+        final ReferenceTable instanceCache = this.instanceCache;
+        final int idx = instanceCache.size();
+        instanceCache.add(target);
+
+        int i = 0;
+        for (int len = readCount(); len != 0; len = readCount()) {
+            if (len < 0) {
+                throw new StreamCorruptedException("Invalid length value for collection chunk in stream (" + len + ")");
+            }
+            for (int j = 0; j < len; j ++) {
+                target.add(doReadCollectionObject(false, i ++, -1, discardMissing));
+            }
+            if (reset) {
+                instanceCache.truncate(idx + 1);
+            }
+        }
+        final Object resolvedObject = objectResolver.readResolve(target);
+        instanceCache.set(idx, unshared ? UNRESOLVED : resolvedObject);
+
+        return resolvedObject;
+    }
+
     @SuppressWarnings({ "unchecked" })
     private Object readSortedSetData(final boolean unshared, int cacheIdx, final int len, final SortedSet target, final boolean discardMissing) throws ClassNotFoundException, IOException {
-        final ArrayList<Object> instanceCache = this.instanceCache;
+        final ReferenceTable instanceCache = this.instanceCache;
         final int idx;
-        final FlatNavigableSet filler = new FlatNavigableSet(target.comparator());
+        final FlatNavigableSet filler = new FlatNavigableSet(target.comparator(), presize(len));
 
         if (cacheIdx == -1) {
             idx = instanceCache.size();
@@ -898,6 +1256,7 @@ public class RiverUnmarshaller extends AbstractUnmarshaller {
         for (int i = 0; i < len; i ++) {
             filler.add(doReadCollectionObject(false, i, len, discardMissing));
         }
+        // the filler shares the target's comparator, so an empty TreeSet builds itself from the sorted entries without comparing them
         target.addAll(filler);
         final Object resolvedObject = objectResolver.readResolve(target);
         instanceCache.set(idx, unshared ? UNRESOLVED : resolvedObject);
@@ -907,7 +1266,7 @@ public class RiverUnmarshaller extends AbstractUnmarshaller {
 
     @SuppressWarnings({ "unchecked" })
     private Object readMapData(final boolean unshared, int cacheIdx, final int len, final Map target, final boolean discardMissing) throws ClassNotFoundException, IOException {
-        final ArrayList<Object> instanceCache = this.instanceCache;
+        final ReferenceTable instanceCache = this.instanceCache;
         final int idx;
 
         if (cacheIdx == -1) {
@@ -929,9 +1288,9 @@ public class RiverUnmarshaller extends AbstractUnmarshaller {
 
     @SuppressWarnings({ "unchecked" })
     private Object readSortedMapData(final boolean unshared, int cacheIdx, final int len, final SortedMap target, final boolean discardMissing) throws ClassNotFoundException, IOException {
-        final ArrayList<Object> instanceCache = this.instanceCache;
+        final ReferenceTable instanceCache = this.instanceCache;
         final int idx;
-        final FlatNavigableMap filler = new FlatNavigableMap(target.comparator());
+        final FlatNavigableMap filler = new FlatNavigableMap(target.comparator(), presize(len));
 
         if (cacheIdx == -1) {
             idx = instanceCache.size();
@@ -944,7 +1303,8 @@ public class RiverUnmarshaller extends AbstractUnmarshaller {
         for (int i = 0; i < len; i ++) {
             filler.put(doReadMapObject(false, i, len, true, discardMissing), doReadMapObject(false, i, len, false, discardMissing));
         }
-        // should install entries in order, bypassing any circular ref issues, unless the map is mutated during deserialize of one of its elements
+        // should install entries in order, bypassing any circular ref issues, unless the map is mutated during deserialize of one of its elements;
+        // the filler shares the target's comparator, so an empty TreeMap builds itself from the sorted entries without comparing them
         target.putAll(filler);
         final Object resolvedObject = objectResolver.readResolve(target);
         instanceCache.set(idx, unshared ? UNRESOLVED : resolvedObject);
@@ -960,7 +1320,7 @@ public class RiverUnmarshaller extends AbstractUnmarshaller {
         final ArrayList<ClassDescriptor> classCache = this.classCache;
         switch (classType) {
             case ID_REPEAT_CLASS_FAR: {
-                return classCache.get(readInt());
+                return classCache.get(readCount());
             }
             case ID_REPEAT_CLASS_NEAR: {
                 return classCache.get((readByte() | 0xffffff00) + classCache.size());
@@ -1027,7 +1387,7 @@ public class RiverUnmarshaller extends AbstractUnmarshaller {
                 return descriptor;
             }
             case ID_PROXY_CLASS: {
-                String[] interfaces = new String[readInt()];
+                String[] interfaces = new String[readCount()];
                 for (int i = 0; i < interfaces.length; i ++) {
                     interfaces[i] = readString();
                 }
@@ -1055,7 +1415,7 @@ public class RiverUnmarshaller extends AbstractUnmarshaller {
                 }
                 final FutureSerializableClassDescriptor descriptor = new FutureSerializableClassDescriptor(localSerializable ? clazz : null, classType);
                 classCache.set(idx, descriptor);
-                final int cnt = readInt();
+                final int cnt = readCount();
                 final String[] names = new String[cnt];
                 final ClassDescriptor[] descriptors = new ClassDescriptor[cnt];
                 final boolean[] unshareds = new boolean[cnt];
@@ -1065,6 +1425,22 @@ public class RiverUnmarshaller extends AbstractUnmarshaller {
                     unshareds[i] = readBoolean();
                 }
                 ClassDescriptor superDescriptor = doReadClassDescriptor(readUnsignedByte(), false);
+                final ClassDescriptorCache classDescriptorCache = this.classDescriptorCache;
+                ClassDescriptorCache.Key cacheKey = null;
+                Class<?>[] types = null;
+                if (classDescriptorCache != null) {
+                    cacheKey = new ClassDescriptorCache.Key(configuredClassResolver, className, uid);
+                    types = new Class<?>[cnt];
+                    for (int i = 0; i < cnt; i ++) {
+                        types[i] = descriptors[i].getType();
+                    }
+                    final ClassDescriptorCache.Entry entry = classDescriptorCache.get(cacheKey);
+                    if (entry != null && entry.matches(clazz, classType, serializabilityChecker, names, types, unshareds, ClassDescriptorCache.unwrap(superDescriptor))) {
+                        descriptor.setResult(entry.getDescriptor());
+                        return descriptor;
+                    }
+                }
+                final ClassDescriptor streamSuperDescriptor = superDescriptor;
                 final Class<?> superClazz = clazz == null ? superDescriptor.getNearestType() : clazz.getSuperclass();
                 if (superDescriptor != null && (clazz == null || localSerializable)) {
                     final Class<?> superType = superDescriptor.getNearestType();
@@ -1096,7 +1472,11 @@ public class RiverUnmarshaller extends AbstractUnmarshaller {
                         fields[i] = new SerializableField(descriptors[i].getType(), names[i], unshareds[i]);
                     }
                 }
-                descriptor.setResult(new BasicSerializableClassDescriptor(localSerializable ? serializableClass : null, superDescriptor, fields, classType));
+                final BasicSerializableClassDescriptor result = new BasicSerializableClassDescriptor(localSerializable ? serializableClass : null, superDescriptor, fields, classType);
+                if (classDescriptorCache != null) {
+                    classDescriptorCache.put(cacheKey, new ClassDescriptorCache.Entry(clazz, classType, serializabilityChecker, names, types, unshareds, ClassDescriptorCache.unwrap(streamSuperDescriptor), result));
+                }
+                descriptor.setResult(result);
                 return descriptor;
             }
             case ID_EXTERNALIZABLE_CLASS: {
@@ -1260,6 +1640,9 @@ public class RiverUnmarshaller extends AbstractUnmarshaller {
             case ID_PAIR: {
                 return ClassDescriptors.PAIR;
             }
+            case ID_BIT_SET: {
+                return ClassDescriptors.BIT_SET;
+            }
 
             case ID_STRING_CLASS: {
                 return ClassDescriptors.STRING_DESCRIPTOR;
@@ -1364,7 +1747,7 @@ public class RiverUnmarshaller extends AbstractUnmarshaller {
     }
 
     protected String readString() throws IOException {
-        final int length = readInt();
+        final int length = readCount();
         return UTFUtils.readUTFBytes(this, length);
     }
 
@@ -1375,13 +1758,28 @@ public class RiverUnmarshaller extends AbstractUnmarshaller {
             throw new IOException("Unsupported protocol version " + version);
         }
         this.version = version;
+        if (version >= 5) {
+            final int flags = readUnsignedByte();
+            if ((flags & ~FLAGS_MASK) != 0) {
+                throw new IOException("Unsupported stream flags " + Integer.toHexString(flags));
+            }
+            varIntFields = (flags & FLAG_VAR_INT_FIELDS) != 0;
+            if ((flags & FLAG_SESSION_CLASSES) == 0) {
+                classCache.clear();
+            } else if (classCache.isEmpty()) {
+                throw new StreamCorruptedException("Stream continues a class session which this unmarshaller does not hold");
+            }
+        } else {
+            varIntFields = false;
+            classCache.clear();
+        }
     }
 
     protected Object doReadNewObject(final int streamClassType, final boolean unshared, final boolean discardMissing) throws ClassNotFoundException, IOException {
         final ClassDescriptor descriptor = doReadClassDescriptor(streamClassType, ! discardMissing);
         try {
             final int classType = descriptor.getTypeID();
-            final List<Object> instanceCache = this.instanceCache;
+            final ReferenceTable instanceCache = this.instanceCache;
             switch (classType) {
                 case ID_PROXY_CLASS: {
                     final Class<?> type = descriptor.getType();
@@ -1411,10 +1809,12 @@ public class RiverUnmarshaller extends AbstractUnmarshaller {
                     final Object obj;
                     if(serializableClass == null) {
                         obj = null;
-                    } else if (!serializableClass.hasNoInitConstructor(serializableClassDescriptor.getNonSerializableSuperclass(serializabilityChecker))) {
-                        throw new NotSerializableException(serializableClass.getSubjectClass().getName());
                     } else {
-                        obj = serializableClass.callNonInitConstructor(serializableClassDescriptor.getNonSerializableSuperclass(serializabilityChecker));
+                        final Class<?> nonSerializableSuperclass = serializableClassDescriptor.getNonSerializableSuperclass(serializabilityChecker);
+                        if (! serializableClass.hasNoInitConstructor(nonSerializableSuperclass)) {
+                            throw new NotSerializableException(serializableClass.getSubjectClass().getName());
+                        }
+                        obj = serializableClass.callNonInitConstructor(nonSerializableSuperclass);
                     }
                     final int idx = instanceCache.size();
                     instanceCache.add(obj);
@@ -1486,7 +1886,7 @@ public class RiverUnmarshaller extends AbstractUnmarshaller {
                     return resolvedObject;
                 }
                 case ID_OBJECT_ARRAY_TYPE_CLASS: {
-                    return doReadObjectArray(readInt(), descriptor.getType().getComponentType(), unshared, discardMissing);
+                    return doReadObjectArray(readCount(), descriptor.getType().getComponentType(), unshared, discardMissing);
                 }
                 case ID_STRING_CLASS: {
                     // v1 string
@@ -1502,28 +1902,28 @@ public class RiverUnmarshaller extends AbstractUnmarshaller {
                     return obj;
                 }
                 case ID_BOOLEAN_ARRAY_CLASS: {
-                    return doReadBooleanArray(readInt(), unshared);
+                    return doReadBooleanArray(readCount(), unshared);
                 }
                 case ID_BYTE_ARRAY_CLASS: {
-                    return doReadByteArray(readInt(), unshared);
+                    return doReadByteArray(readCount(), unshared);
                 }
                 case ID_SHORT_ARRAY_CLASS: {
-                    return doReadShortArray(readInt(), unshared);
+                    return doReadShortArray(readCount(), unshared);
                 }
                 case ID_INT_ARRAY_CLASS: {
-                    return doReadIntArray(readInt(), unshared);
+                    return doReadIntArray(readCount(), unshared);
                 }
                 case ID_LONG_ARRAY_CLASS: {
-                    return doReadLongArray(readInt(), unshared);
+                    return doReadLongArray(readCount(), unshared);
                 }
                 case ID_CHAR_ARRAY_CLASS: {
-                    return doReadCharArray(readInt(), unshared);
+                    return doReadCharArray(readCount(), unshared);
                 }
                 case ID_FLOAT_ARRAY_CLASS: {
-                    return doReadFloatArray(readInt(), unshared);
+                    return doReadFloatArray(readCount(), unshared);
                 }
                 case ID_DOUBLE_ARRAY_CLASS: {
-                    return doReadDoubleArray(readInt(), unshared);
+                    return doReadDoubleArray(readCount(), unshared);
                 }
                 case ID_BOOLEAN_CLASS: {
                     return objectResolver.readResolve(Boolean.valueOf(readBoolean()));
@@ -1574,9 +1974,7 @@ public class RiverUnmarshaller extends AbstractUnmarshaller {
 
     private Object doReadDoubleArray(final int cnt, final boolean unshared) throws IOException {
         final double[] array = new double[cnt];
-        for (int i = 0; i < cnt; i ++) {
-            array[i] = readDouble();
-        }
+        readDoubles(array, 0, cnt);
         final Object resolvedObject = objectResolver.readResolve(array);
         instanceCache.add(unshared ? UNRESOLVED : resolvedObject);
         return resolvedObject;
@@ -1584,9 +1982,7 @@ public class RiverUnmarshaller extends AbstractUnmarshaller {
 
     private Object doReadFloatArray(final int cnt, final boolean unshared) throws IOException {
         final float[] array = new float[cnt];
-        for (int i = 0; i < cnt; i ++) {
-            array[i] = readFloat();
-        }
+        readFloats(array, 0, cnt);
         final Object resolvedObject = objectResolver.readResolve(array);
         instanceCache.add(unshared ? UNRESOLVED : resolvedObject);
         return resolvedObject;
@@ -1594,9 +1990,7 @@ public class RiverUnmarshaller extends AbstractUnmarshaller {
 
     private Object doReadCharArray(final int cnt, final boolean unshared) throws IOException {
         final char[] array = new char[cnt];
-        for (int i = 0; i < cnt; i ++) {
-            array[i] = readChar();
-        }
+        readChars(array, 0, cnt);
         final Object resolvedObject = objectResolver.readResolve(array);
         instanceCache.add(unshared ? UNRESOLVED : resolvedObject);
         return resolvedObject;
@@ -1604,9 +1998,7 @@ public class RiverUnmarshaller extends AbstractUnmarshaller {
 
     private Object doReadLongArray(final int cnt, final boolean unshared) throws IOException {
         final long[] array = new long[cnt];
-        for (int i = 0; i < cnt; i ++) {
-            array[i] = readLong();
-        }
+        readLongs(array, 0, cnt);
         final Object resolvedObject = objectResolver.readResolve(array);
         instanceCache.add(unshared ? UNRESOLVED : resolvedObject);
         return resolvedObject;
@@ -1614,9 +2006,7 @@ public class RiverUnmarshaller extends AbstractUnmarshaller {
 
     private Object doReadIntArray(final int cnt, final boolean unshared) throws IOException {
         final int[] array = new int[cnt];
-        for (int i = 0; i < cnt; i ++) {
-            array[i] = readInt();
-        }
+        readInts(array, 0, cnt);
         final Object resolvedObject = objectResolver.readResolve(array);
         instanceCache.add(unshared ? UNRESOLVED : resolvedObject);
         return resolvedObject;
@@ -1624,9 +2014,7 @@ public class RiverUnmarshaller extends AbstractUnmarshaller {
 
     private Object doReadShortArray(final int cnt, final boolean unshared) throws IOException {
         final short[] array = new short[cnt];
-        for (int i = 0; i < cnt; i ++) {
-            array[i] = readShort();
-        }
+        readShorts(array, 0, cnt);
         final Object resolvedObject = objectResolver.readResolve(array);
         instanceCache.add(unshared ? UNRESOLVED : resolvedObject);
         return resolvedObject;
@@ -1642,9 +2030,16 @@ public class RiverUnmarshaller extends AbstractUnmarshaller {
 
     private Object doReadBooleanArray(final int cnt, final boolean unshared) throws IOException {
         final boolean[] array = new boolean[cnt];
+        final int wc = cnt & ~63;
+        for (int i = 0; i < wc; i += 64) {
+            final long word = Long.reverseBytes(readLong());
+            for (int j = 0; j < 64; j++) {
+                array[i + j] = (word & 1L << j) != 0L;
+            }
+        }
         int v;
         int bc = cnt & ~7;
-        for (int i = 0; i < bc; ) {
+        for (int i = wc; i < bc; ) {
             v = readByte();
             array[i++] = (v & 1) != 0;
             array[i++] = (v & 2) != 0;
@@ -1803,6 +2198,10 @@ public class RiverUnmarshaller extends AbstractUnmarshaller {
     }
 
     protected void readFields(final Object obj, final SerializableClassDescriptor descriptor, final boolean discardMissing) throws IOException, ClassNotFoundException {
+        if (precompiledFields) {
+            descriptor.getFieldSerializer().readFields(this, obj, discardMissing);
+            return;
+        }
         for (SerializableField serializableField : descriptor.getFields()) {
             try {
                 if (! serializableField.isAccessible()) {
@@ -1829,11 +2228,11 @@ public class RiverUnmarshaller extends AbstractUnmarshaller {
                             break;
                         }
                         case INT: {
-                            readInt();
+                            readIntField();
                             break;
                         }
                         case LONG: {
-                            readLong();
+                            readLongField();
                             break;
                         }
                         case OBJECT: {
@@ -1868,11 +2267,11 @@ public class RiverUnmarshaller extends AbstractUnmarshaller {
                             break;
                         }
                         case INT: {
-                            serializableField.setInt(obj, readInt());
+                            serializableField.setInt(obj, readIntField());
                             break;
                         }
                         case LONG: {
-                            serializableField.setLong(obj, readLong());
+                            serializableField.setLong(obj, readLongField());
                             break;
                         }
                         case OBJECT: {
@@ -1918,11 +2317,11 @@ public class RiverUnmarshaller extends AbstractUnmarshaller {
                         break;
                     }
                     case INT: {
-                        readInt();
+                        readIntField();
                         break;
                     }
                     case LONG: {
-                        readLong();
+                        readLongField();
                         break;
                     }
                     case OBJECT: {
@@ -1954,10 +2353,74 @@ public class RiverUnmarshaller extends AbstractUnmarshaller {
     }
 
     public String readUTF() throws IOException {
-        final int len = readInt();
+        final int len = readCount();
         return UTFUtils.readUTFBytes(this, len);
     }
     
+    /**
+     * Read a non-negative length, count, or back-reference index, as written by {@link RiverMarshaller#writeCount(int)}.
+     *
+     * @return the value read
+     * @throws IOException if an I/O error occurs
+     */
+    int readCount() throws IOException {
+        return version >= 5 ? readVarInt() : readInt();
+    }
+
+    /**
+     * Read an {@code int} field value, as written by {@link RiverMarshaller#writeIntField(int)}.
+     *
+     * @return the value read
+     * @throws IOException if an I/O error occurs
+     */
+    int readIntField() throws IOException {
+        if (varIntFields) {
+            final int v = readVarInt();
+            return v >>> 1 ^ -(v & 1);
+        } else {
+            return readInt();
+        }
+    }
+
+    /**
+     * Read a {@code long} field value, as written by {@link RiverMarshaller#writeLongField(long)}.
+     *
+     * @return the value read
+     * @throws IOException if an I/O error occurs
+     */
+    long readLongField() throws IOException {
+        if (varIntFields) {
+            final long v = readVarLong();
+            return v >>> 1 ^ -(v & 1);
+        } else {
+            return readLong();
+        }
+    }
+
+    private int readVarInt() throws IOException {
+        int v = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            final int b = readUnsignedByte();
+            v |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return v;
+            }
+        }
+        throw new StreamCorruptedException("Malformed variable-length integer in stream");
+    }
+
+    private long readVarLong() throws IOException {
+        long v = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            final int b = readUnsignedByte();
+            v |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return v;
+            }
+        }
+        throw new StreamCorruptedException("Malformed variable-length integer in stream");
+    }
+
     private Object replace(Object object) {
         return object == null ? null : objectPreResolver.readResolve(object);
     }
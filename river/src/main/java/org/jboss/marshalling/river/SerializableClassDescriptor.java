@@ -26,6 +26,7 @@ import org.jboss.marshalling.reflect.SerializableClass;
  *
  */
 abstract class SerializableClassDescriptor extends ClassDescriptor {
+    private FieldSerializer fieldSerializer;
 
     protected SerializableClassDescriptor() {}
 
@@ -44,6 +45,15 @@ abstract class SerializableClassDescriptor extends ClassDescriptor {
 
     public abstract SerializableClass getSerializableClass();
 
+    FieldSerializer getFieldSerializer() {
+        FieldSerializer fieldSerializer = this.fieldSerializer;
+        if (fieldSerializer == null) {
+            // benign race: descriptors may be shared, but the serializer is immutable
+            this.fieldSerializer = fieldSerializer = new FieldSerializer(getSerializableClass(), getFields());
+        }
+        return fieldSerializer;
+    }
+
     public String toString() {
         final ClassDescriptor superClassDescriptor = getSuperClassDescriptor();
         if (superClassDescriptor == null) {
@@ -291,9 +291,20 @@ final class BlockMarshaller implements Marshaller, ExtendedObjectStreamConstants
                 UTFUtils.writeUTFBytes(serialMarshaller, s);
             }
         } else  {
-            // the string will fit in this buffer
-            writeShort(len);
-            UTFUtils.writeUTFBytes(this, s);
+            // the string will fit in this buffer, so send it in one block with what is already buffered,
+            // encoding it straight into the marshaller's buffer
+            final int size = position + 2 + len;
+            if (size < 256) {
+                serialMarshaller.write(TC_BLOCKDATA);
+                serialMarshaller.write(size);
+            } else {
+                serialMarshaller.write(TC_BLOCKDATALONG);
+                serialMarshaller.writeInt(size);
+            }
+            serialMarshaller.write(buffer, 0, position);
+            this.position = 0;
+            serialMarshaller.writeShort(len);
+            UTFUtils.writeUTFBytes(serialMarshaller, s);
         }
     }
 
@@ -20,6 +20,8 @@ package org.jboss.test.marshalling;
 
 import java.io.IOException;
 import org.jboss.marshalling.AbstractClassResolver;
+import org.jboss.marshalling.ByteInput;
+import org.jboss.marshalling.ByteOutput;
 import org.jboss.marshalling.Marshaller;
 import org.jboss.marshalling.Unmarshaller;
 import org.testng.annotations.Factory;
@@ -56,6 +58,46 @@ public final class SimpleMarshallerTestFactory {
 
         final TestMarshallerProvider riverTestMarshallerProviderV4 = new MarshallerFactoryTestMarshallerProvider(riverMarshallerFactory, 4);
         final TestUnmarshallerProvider riverTestUnmarshallerProviderV4 = new MarshallerFactoryTestUnmarshallerProvider(riverMarshallerFactory, 4);
+        final TestMarshallerProvider riverTestMarshallerProviderV4Adaptive = new MarshallerFactoryTestMarshallerProvider(riverMarshallerFactory, 4) {
+            public Marshaller create(final MarshallingConfiguration config, final ByteOutput target) throws IOException {
+                config.setAdaptiveCounts(true);
+                return super.create(config, target);
+            }
+        };
+        final TestUnmarshallerProvider riverTestUnmarshallerProviderV4Adaptive = new TestUnmarshallerProvider() {
+            public Unmarshaller create(final MarshallingConfiguration config, final ByteInput source) throws IOException {
+                config.setAdaptiveCounts(true);
+                return riverTestUnmarshallerProviderV4.create(config, source);
+            }
+        };
+
+        final TestMarshallerProvider riverTestMarshallerProviderV5 = new MarshallerFactoryTestMarshallerProvider(riverMarshallerFactory, 5);
+        final TestUnmarshallerProvider riverTestUnmarshallerProviderV5 = new MarshallerFactoryTestUnmarshallerProvider(riverMarshallerFactory, 5);
+        final TestMarshallerProvider riverTestMarshallerProviderV5VarInt = new MarshallerFactoryTestMarshallerProvider(riverMarshallerFactory, 5) {
+            public Marshaller create(final MarshallingConfiguration config, final ByteOutput target) throws IOException {
+                config.setVarIntFields(true);
+                return super.create(config, target);
+            }
+        };
+        final TestMarshallerProvider riverTestMarshallerProviderV5Precompiled = new MarshallerFactoryTestMarshallerProvider(riverMarshallerFactory, 5) {
+            public Marshaller create(final MarshallingConfiguration config, final ByteOutput target) throws IOException {
+                config.setPrecompiledFields(true);
+                return super.create(config, target);
+            }
+        };
+        final TestUnmarshallerProvider riverTestUnmarshallerProviderV5Precompiled = new TestUnmarshallerProvider() {
+            public Unmarshaller create(final MarshallingConfiguration config, final ByteInput source) throws IOException {
+                config.setPrecompiledFields(true);
+                return riverTestUnmarshallerProviderV5.create(config, source);
+            }
+        };
+        final TestUnmarshallerProvider riverTestUnmarshallerProviderV5Shared = new TestUnmarshallerProvider() {
+            public Unmarshaller create(final MarshallingConfiguration config, final ByteInput source) throws IOException {
+                config.setClassDescriptorCacheSize(16);
+                config.setPrecompiledFields(true);
+                return riverTestUnmarshallerProviderV5.create(config, source);
+            }
+        };
 
         final MarshallerFactory serialMarshallerFactory = Marshalling.getProvidedMarshallerFactory("serial");
         final TestMarshallerProvider serialTestMarshallerProvider = new MarshallerFactoryTestMarshallerProvider(serialMarshallerFactory);
@@ -74,6 +116,20 @@ public final class SimpleMarshallerTestFactory {
                 create(riverTestMarshallerProviderV3, riverTestUnmarshallerProviderV3),
                 // river - v4 writer, v4 reader
                 create(riverTestMarshallerProviderV4, riverTestUnmarshallerProviderV4),
+                // river - v4 writer, v4 reader, both with adaptive counts
+                create(riverTestMarshallerProviderV4Adaptive, riverTestUnmarshallerProviderV4Adaptive),
+                // river - v4 writer, v5 reader
+                create(riverTestMarshallerProviderV4, riverTestUnmarshallerProviderV5),
+                // river - v5 writer, v5 reader
+                create(riverTestMarshallerProviderV5, riverTestUnmarshallerProviderV5),
+                // river - v5 writer with variable-length int fields, v5 reader
+                create(riverTestMarshallerProviderV5VarInt, riverTestUnmarshallerProviderV5),
+                // river - v5 writer with precompiled fields, v5 reader
+                create(riverTestMarshallerProviderV5Precompiled, riverTestUnmarshallerProviderV5),
+                // river - v5 writer with variable-length int fields, v5 reader with precompiled fields
+                create(riverTestMarshallerProviderV5VarInt, riverTestUnmarshallerProviderV5Precompiled),
+                // river - v5 writer, v5 reader with shared class descriptors
+                create(riverTestMarshallerProviderV5, riverTestUnmarshallerProviderV5Shared),
 
                 // serial
                 create(serialTestMarshallerProvider, serialTestUnmarshallerProvider),
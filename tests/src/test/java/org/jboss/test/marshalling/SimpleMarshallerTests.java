@@ -22,6 +22,7 @@ import static org.testng.AssertJUnit.*;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.Externalizable;
 import java.io.IOException;
 import java.io.InvalidObjectException;
@@ -35,14 +36,21 @@ import java.io.ObjectStreamException;
 import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.io.StreamCorruptedException;
+import java.lang.reflect.Field;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
@@ -58,10 +66,12 @@ import org.jboss.marshalling.ByteInput;
 import org.jboss.marshalling.ByteOutput;
 import org.jboss.marshalling.ClassExternalizerFactory;
 import org.jboss.marshalling.ClassTable;
+import org.jboss.marshalling.ExceptionListener;
 import org.jboss.marshalling.Externalize;
 import org.jboss.marshalling.Externalizer;
 import org.jboss.marshalling.FieldSetter;
 import org.jboss.marshalling.Marshaller;
+import org.jboss.marshalling.MarshallerPool;
 import org.jboss.marshalling.Marshalling;
 import org.jboss.marshalling.MarshallingConfiguration;
 import org.jboss.marshalling.ObjectInputStreamUnmarshaller;
@@ -71,11 +81,13 @@ import org.jboss.marshalling.ObjectTable;
 import org.jboss.marshalling.SimpleClassResolver;
 import org.jboss.marshalling.StreamHeader;
 import org.jboss.marshalling.Unmarshaller;
+import org.jboss.marshalling.UnmarshallerPool;
 
 import org.jboss.marshalling.river.RiverMarshaller;
 import org.jboss.marshalling.river.RiverMarshallerFactory;
 import org.jboss.marshalling.river.RiverUnmarshaller;
 import org.jboss.marshalling.serial.SerialUnmarshaller;
+import org.jboss.marshalling.util.IdentityIntMap;
 import org.testng.SkipException;
 import org.testng.annotations.Test;
 
@@ -1178,6 +1190,140 @@ public final class SimpleMarshallerTests extends TestBase {
         });
     }
 
+    @Test
+    public void testManyBackReferences() throws Throwable {
+        final TestSerializable[] objects = new TestSerializable[5000];
+        for (int i = 0; i < objects.length; i++) {
+            objects[i] = new TestSerializable();
+        }
+        runReadWriteTest(new ReadWriteTest() {
+            public void runWrite(final Marshaller marshaller) throws Throwable {
+                for (TestSerializable object : objects) {
+                    marshaller.writeObject(object);
+                }
+                for (int i = objects.length - 1; i >= 0; i -= 7) {
+                    marshaller.writeObject(objects[i]);
+                }
+            }
+
+            public void runRead(final Unmarshaller unmarshaller) throws Throwable {
+                final Object[] read = new Object[objects.length];
+                for (int i = 0; i < read.length; i++) {
+                    read[i] = unmarshaller.readObject();
+                    assertEquals(objects[i], read[i]);
+                }
+                for (int i = objects.length - 1; i >= 0; i -= 7) {
+                    assertSame(read[i], unmarshaller.readObject());
+                }
+                assertEOF(unmarshaller);
+            }
+        });
+    }
+
+    @Test
+    public void testTreeMode() throws Throwable {
+        final TestSerializable t = new TestSerializable();
+        final Object[] tree = { t, t, Arrays.asList(t, "foo", "foo"), new int[] { 1, 2, 3 } };
+        final AtomicBoolean river = new AtomicBoolean();
+        runReadWriteTest(new ReadWriteTest() {
+            public void configureRead(final MarshallingConfiguration configuration) throws Throwable {
+                configuration.setTreeMode(true);
+            }
+
+            public void runWrite(final Marshaller marshaller) throws Throwable {
+                river.set(marshaller instanceof RiverMarshaller);
+                marshaller.writeObject(tree);
+                marshaller.writeObject(t);
+            }
+
+            public void runRead(final Unmarshaller unmarshaller) throws Throwable {
+                final Object[] read = (Object[]) unmarshaller.readObject();
+                assertEquals(t, read[0]);
+                assertEquals(t, read[1]);
+                assertEquals(Arrays.asList(t, "foo", "foo"), read[2]);
+                assertTrue(Arrays.equals((int[]) tree[3], (int[]) read[3]));
+                final Object last = unmarshaller.readObject();
+                assertEquals(t, last);
+                if (river.get()) {
+                    // every reference is a copy
+                    assertNotSame(read[0], read[1]);
+                    assertNotSame(read[0], last);
+                }
+                assertEOF(unmarshaller);
+            }
+        });
+    }
+
+    @Test
+    public void testLargePrimitiveArrays() throws Throwable {
+        // one array per length encoding, each spanning many buffer fills
+        final int[] ints = new int[70000];
+        final long[] longs = new long[3000];
+        final double[] doubles = new double[300];
+        final char[] chars = new char[257];
+        final Random rng = new Random();
+        for (int i = 0; i < ints.length; i++) {
+            ints[i] = rng.nextInt();
+        }
+        for (int i = 0; i < longs.length; i++) {
+            longs[i] = rng.nextLong();
+        }
+        for (int i = 0; i < doubles.length; i++) {
+            doubles[i] = rng.nextDouble();
+        }
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) rng.nextInt();
+        }
+        runReadWriteTest(new ReadWriteTest() {
+            public void runWrite(final Marshaller marshaller) throws Throwable {
+                marshaller.writeObject(ints);
+                marshaller.writeObject(longs);
+                marshaller.writeObject(doubles);
+                marshaller.writeObject(chars);
+            }
+
+            public void runRead(final Unmarshaller unmarshaller) throws Throwable {
+                assertTrue(Arrays.equals(ints, (int[]) unmarshaller.readObject()));
+                assertTrue(Arrays.equals(longs, (long[]) unmarshaller.readObject()));
+                assertTrue(Arrays.equals(doubles, (double[]) unmarshaller.readObject()));
+                assertTrue(Arrays.equals(chars, (char[]) unmarshaller.readObject()));
+                assertEOF(unmarshaller);
+            }
+        });
+    }
+
+    @Test
+    public void testBitSetAndBooleanArray() throws Throwable {
+        final Random rng = new Random();
+        final BitSet bitSet = new BitSet();
+        for (int i = 0; i < 1000; i++) {
+            if (rng.nextBoolean()) bitSet.set(i);
+        }
+        final boolean[] flags = new boolean[1000];
+        for (int i = 0; i < flags.length; i++) {
+            flags[i] = rng.nextBoolean();
+        }
+        runReadWriteTest(new ReadWriteTest() {
+            public void runWrite(final Marshaller marshaller) throws Throwable {
+                marshaller.writeObject(bitSet);
+                marshaller.writeObject(new BitSet());
+                marshaller.writeObject(flags);
+                marshaller.writeObject(bitSet);
+                marshaller.writeObject(BitSet.class);
+            }
+
+            public void runRead(final Unmarshaller unmarshaller) throws Throwable {
+                final BitSet result = (BitSet) unmarshaller.readObject();
+                assertEquals(bitSet, result);
+                assertEquals(new BitSet(), unmarshaller.readObject());
+                assertTrue(Arrays.equals(flags, (boolean[]) unmarshaller.readObject()));
+                assertSame(result, unmarshaller.readObject());
+                assertSame(BitSet.class, unmarshaller.readObject());
+                assertEOF(unmarshaller);
+            }
+        });
+    }
+
     @Test
     public void testLongArray() throws Throwable {
         final long[] test = new long[50];
@@ -1358,6 +1504,368 @@ public final class SimpleMarshallerTests extends TestBase {
         });
     }
 
+    @Test
+    public void testHashCollections() throws Throwable {
+        final HashMap<String, Integer> hashMap = new HashMap<String, Integer>(4, 0.5f);
+        final LinkedHashMap<String, Integer> accessOrderMap = new LinkedHashMap<String, Integer>(16, 0.75f, true);
+        final HashSet<String> hashSet = new HashSet<String>();
+        final ConcurrentHashMap<String, Integer> concurrentMap = new ConcurrentHashMap<String, Integer>();
+        // below the smallest load factor the stream carries
+        final HashMap<String, Integer> sparseMap = new HashMap<String, Integer>(4, 0.01f);
+        sparseMap.put("k", Integer.valueOf(1));
+        for (int i = 0; i < 300; i++) {
+            hashMap.put("k" + i, Integer.valueOf(i));
+            accessOrderMap.put("k" + i, Integer.valueOf(i));
+            hashSet.add("k" + i);
+            concurrentMap.put("k" + i, Integer.valueOf(i));
+        }
+        accessOrderMap.get("k0");
+        runReadWriteTest(new ReadWriteTest() {
+            public void runWrite(final Marshaller marshaller) throws Throwable {
+                marshaller.writeObject(hashMap);
+                marshaller.writeObject(accessOrderMap);
+                marshaller.writeObject(hashSet);
+                marshaller.writeObject(concurrentMap);
+                marshaller.writeObject(new Object[] { hashMap, accessOrderMap, hashSet, concurrentMap });
+                marshaller.writeObject(sparseMap);
+            }
+
+            @SuppressWarnings({ "unchecked" })
+            public void runRead(final Unmarshaller unmarshaller) throws Throwable {
+                final HashMap<String, Integer> hashMap2 = (HashMap<String, Integer>) unmarshaller.readObject();
+                assertEquals(HashMap.class, hashMap2.getClass());
+                assertEquals(hashMap, hashMap2);
+                final LinkedHashMap<String, Integer> accessOrderMap2 = (LinkedHashMap<String, Integer>) unmarshaller.readObject();
+                assertEquals(accessOrderMap, accessOrderMap2);
+                assertEquals(new ArrayList<String>(accessOrderMap.keySet()), new ArrayList<String>(accessOrderMap2.keySet()));
+                // access order survives: reading an entry moves it to the end
+                accessOrderMap2.get("k1");
+                assertEquals("k1", new ArrayList<String>(accessOrderMap2.keySet()).get(299));
+                final HashSet<String> hashSet2 = (HashSet<String>) unmarshaller.readObject();
+                assertEquals(HashSet.class, hashSet2.getClass());
+                assertEquals(hashSet, hashSet2);
+                final ConcurrentHashMap<String, Integer> concurrentMap2 = (ConcurrentHashMap<String, Integer>) unmarshaller.readObject();
+                assertEquals(concurrentMap, concurrentMap2);
+                final Object[] all = (Object[]) unmarshaller.readObject();
+                assertSame(hashMap2, all[0]);
+                assertSame(accessOrderMap2, all[1]);
+                assertSame(hashSet2, all[2]);
+                assertSame(concurrentMap2, all[3]);
+                assertEquals(sparseMap, unmarshaller.readObject());
+                assertEOF(unmarshaller);
+            }
+        });
+    }
+
+    @Test
+    public void testHostileHashCollectionLength() throws Throwable {
+        final MarshallingConfiguration config = configuration.clone();
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final Marshaller marshaller = testMarshallerProvider.create(config, Marshalling.createByteOutput(baos));
+        if (! (marshaller instanceof RiverMarshaller) || config.getVersion() < 5) {
+            throw new SkipException("Test not relevant for " + marshaller);
+        }
+        final HashMap<String, String> map = new HashMap<String, String>();
+        map.put("k", "v");
+        marshaller.writeObject(map);
+        marshaller.finish();
+        final byte[] bytes = baos.toByteArray();
+        // ID_COLLECTION_SMALL, one member, ID_CC_HASH_MAP, then the load factor
+        int header = -1;
+        for (int i = 0; i + 7 <= bytes.length && header == -1; i++) {
+            if (bytes[i] == 0x53 && bytes[i + 1] == 1 && bytes[i + 2] == 0x64 && readFloat(bytes, i + 3) == 0.75f) {
+                header = i;
+            }
+        }
+        assertTrue(header != -1);
+
+        final byte[] tinyLoadFactor = bytes.clone();
+        writeFloat(tinyLoadFactor, header + 3, 1e-30f);
+        try {
+            readHostile(tinyLoadFactor);
+            fail("Expected StreamCorruptedException");
+        } catch (StreamCorruptedException expected) {
+        }
+
+        // ID_COLLECTION_LARGE declaring Integer.MAX_VALUE members, followed by only the one that was written
+        final ByteArrayOutputStream hostile = new ByteArrayOutputStream();
+        hostile.write(bytes, 0, header);
+        hostile.write(new byte[] { 0x55, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x07, 0x64, 0, 0, 0, 0 });
+        hostile.write(bytes, header + 7, bytes.length - header - 7);
+        final byte[] largeLength = hostile.toByteArray();
+        writeFloat(largeLength, header + 7, 0.1f);
+        try {
+            readHostile(largeLength);
+            fail("Expected EOFException");
+        } catch (EOFException expected) {
+        }
+    }
+
+    private void readHostile(final byte[] bytes) throws IOException, ClassNotFoundException {
+        final Unmarshaller unmarshaller = testUnmarshallerProvider.create(configuration.clone(), Marshalling.createByteInput(new ByteArrayInputStream(bytes)));
+        unmarshaller.readObject();
+    }
+
+    private static float readFloat(final byte[] bytes, final int offs) {
+        return Float.intBitsToFloat((bytes[offs] & 0xff) << 24 | (bytes[offs + 1] & 0xff) << 16 | (bytes[offs + 2] & 0xff) << 8 | bytes[offs + 3] & 0xff);
+    }
+
+    private static void writeFloat(final byte[] bytes, final int offs, final float value) {
+        final int bits = Float.floatToIntBits(value);
+        bytes[offs] = (byte) (bits >> 24);
+        bytes[offs + 1] = (byte) (bits >> 16);
+        bytes[offs + 2] = (byte) (bits >> 8);
+        bytes[offs + 3] = (byte) bits;
+    }
+
+    @Test
+    public void testCollectionStream() throws Throwable {
+        final ArrayList<Object> list = new ArrayList<Object>();
+        final TreeMap<String, Integer> tree = new TreeMap<String, Integer>();
+        for (int i = 0; i < 1000; i++) {
+            final TestComplexObject element = new TestComplexObject(true, (byte) i, 'x', (short) i, i, i, 1.0f, 2.0, "e" + i, null);
+            list.add(element);
+            list.add(element);
+            tree.put("k" + i, Integer.valueOf(i));
+        }
+        final Object trailer = new TestComplexObject(false, (byte) 1, 'y', (short) 2, 3, 4L, 5.0f, 6.0, "trailer", null);
+        runReadWriteTest(new ReadWriteTest() {
+            public void runWrite(final Marshaller marshaller) throws Throwable {
+                marshaller.writeObject(list);
+                marshaller.writeObject(tree);
+                marshaller.writeObject(Collections.nCopies(5, "copy"));
+                marshaller.writeObject(new ArrayList<Object>());
+                marshaller.writeObject(Arrays.asList("a", "b"));
+                marshaller.writeObject(trailer);
+            }
+
+            @SuppressWarnings({ "unchecked" })
+            public void runRead(final Unmarshaller unmarshaller) throws Throwable {
+                Iterator<Object> iterator = unmarshaller.readCollectionStream();
+                for (int i = 0; i < 1000; i++) {
+                    final Object element = iterator.next();
+                    assertEquals(list.get(i << 1), element);
+                    // back-references between members are preserved
+                    assertSame(element, iterator.next());
+                }
+                assertFalse(iterator.hasNext());
+                iterator = unmarshaller.readCollectionStream();
+                final TreeMap<String, Integer> tree2 = new TreeMap<String, Integer>();
+                while (iterator.hasNext()) {
+                    final Map.Entry<String, Integer> entry = (Map.Entry<String, Integer>) iterator.next();
+                    tree2.put(entry.getKey(), entry.getValue());
+                }
+                assertEquals(tree, tree2);
+                iterator = unmarshaller.readCollectionStream();
+                for (int i = 0; i < 5; i++) {
+                    assertEquals("copy", iterator.next());
+                }
+                assertFalse(iterator.hasNext());
+                assertFalse(unmarshaller.readCollectionStream().hasNext());
+                iterator = unmarshaller.readCollectionStream();
+                assertEquals("a", iterator.next());
+                assertEquals("b", iterator.next());
+                assertFalse(iterator.hasNext());
+                assertEquals(trailer, unmarshaller.readObject());
+                assertEOF(unmarshaller);
+            }
+        });
+    }
+
+    @Test
+    public void testChunkedCollectionStream() throws Throwable {
+        final ArrayList<Object> members = new ArrayList<Object>();
+        for (int i = 0; i < 700; i++) {
+            members.add(new TestComplexObject(true, (byte) i, 'x', (short) i, i, i, 1.0f, 2.0, "e" + i, null));
+        }
+        for (int i = 0; i < 300; i++) {
+            // back-references across chunk boundaries
+            members.add(members.get(i));
+        }
+        runReadWriteTest(new ReadWriteTest() {
+            public void runWrite(final Marshaller marshaller) throws Throwable {
+                marshaller.writeCollectionStream(members.iterator());
+                marshaller.writeCollectionStream(members.iterator());
+                marshaller.writeCollectionStream(Collections.emptyIterator());
+                marshaller.writeObject("trailer");
+            }
+
+            public void runRead(final Unmarshaller unmarshaller) throws Throwable {
+                final List<?> list = (List<?>) unmarshaller.readObject();
+                assertEquals(members, list);
+                assertSame(list.get(5), list.get(705));
+                final Iterator<Object> iterator = unmarshaller.readCollectionStream();
+                final ArrayList<Object> streamed = new ArrayList<Object>();
+                while (iterator.hasNext()) {
+                    streamed.add(iterator.next());
+                }
+                assertEquals(members, streamed);
+                assertSame(streamed.get(299), streamed.get(999));
+                assertFalse(unmarshaller.readCollectionStream().hasNext());
+                assertEquals("trailer", unmarshaller.readObject());
+                assertEOF(unmarshaller);
+            }
+        });
+    }
+
+    @Test
+    public void testChunkedCollectionStreamReset() throws Throwable {
+        final Date shared = new Date(1234L);
+        final ArrayList<Object> members = new ArrayList<Object>();
+        for (int i = 0; i < 4000; i++) {
+            // every odd member refers back to the one before, in the same chunk
+            members.add(i % 2 == 0 ? Arrays.asList(shared, "m" + i) : members.get(i - 1));
+        }
+        members.add(members.get(0));
+        final MarshallingConfiguration[] writeConfiguration = new MarshallingConfiguration[1];
+        runReadWriteTest(new ReadWriteTest() {
+            public void configureRead(final MarshallingConfiguration configuration) throws Throwable {
+                configuration.setCollectionStreamReset(true);
+                writeConfiguration[0] = configuration;
+            }
+
+            public void runWrite(final Marshaller marshaller) throws Throwable {
+                if (! (marshaller instanceof RiverMarshaller) || writeConfiguration[0].getVersion() < 5) {
+                    throw new SkipException("Test not relevant for " + marshaller);
+                }
+                final Field field = RiverMarshaller.class.getDeclaredField("instanceCache");
+                field.setAccessible(true);
+                final IdentityIntMap<?> instanceCache = (IdentityIntMap<?>) field.get(marshaller);
+                marshaller.writeObject(shared);
+                final int base = instanceCache.size();
+                marshaller.writeCollectionStream(members.iterator());
+                marshaller.writeCollectionStream(members.iterator());
+                marshaller.writeObject(shared);
+                // only what was written before the collections is left
+                assertEquals(base, instanceCache.size());
+            }
+
+            public void runRead(final Unmarshaller unmarshaller) throws Throwable {
+                final Object readShared = unmarshaller.readObject();
+                assertEquals(shared, readShared);
+                final List<?> list = (List<?>) unmarshaller.readObject();
+                assertEquals(members, list);
+                assertSame(list.get(0), list.get(1));
+                assertSame(readShared, ((List<?>) list.get(3998)).get(0));
+                // the last member refers to a member of the first chunk, so it is read as a copy
+                assertNotSame(list.get(0), list.get(4000));
+                final int base = instanceCacheSize(unmarshaller);
+                final Iterator<Object> iterator = unmarshaller.readCollectionStream();
+                final ArrayList<Object> streamed = new ArrayList<Object>();
+                int peak = 0;
+                while (iterator.hasNext()) {
+                    streamed.add(iterator.next());
+                    peak = Math.max(peak, instanceCacheSize(unmarshaller) - base);
+                }
+                assertEquals(members, streamed);
+                assertSame(streamed.get(2), streamed.get(3));
+                assertSame(readShared, ((List<?>) streamed.get(3998)).get(0));
+                // one chunk of 128 distinct members, each a list, its array and a string, plus the collection slot
+                assertTrue("peak " + peak, peak <= 128 * 3 + 1);
+                assertSame(readShared, unmarshaller.readObject());
+                assertEOF(unmarshaller);
+            }
+        });
+    }
+
+    @Test
+    public void testAdaptiveCountsHints() throws Throwable {
+        // every stream must use the same configuration object to share one history
+        final MarshallingConfiguration config = configuration.clone();
+        final int[] hints = new int[6];
+        for (int i = 0; i < 16; i++) {
+            // lists of 10 to 80 dates in a shuffled order, then of 90 to 160
+            final int size = 10 * ((i * 3) % 8 + 1 + (i & 8));
+            final ArrayList<Date> graph = new ArrayList<Date>();
+            for (int j = 0; j < size; j++) {
+                graph.add(new Date(j));
+            }
+            final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            final Marshaller marshaller = testMarshallerProvider.create(config, Marshalling.createByteOutput(baos));
+            if (! (marshaller instanceof RiverMarshaller) || ! config.isAdaptiveCounts()) {
+                throw new SkipException("Test not relevant for " + marshaller);
+            }
+            marshaller.writeObject(graph);
+            marshaller.finish();
+            final Unmarshaller unmarshaller = testUnmarshallerProvider.create(config, Marshalling.createByteInput(new ByteArrayInputStream(baos.toByteArray())));
+            assertEquals(graph, unmarshaller.readObject());
+            unmarshaller.finish();
+            if (i == 7) {
+                graphSizeHints(marshaller, hints, 0);
+            } else if (i == 8) {
+                graphSizeHints(marshaller, hints, 2);
+            }
+        }
+        graphSizeHints(testMarshallerProvider.create(config, Marshalling.createByteOutput(new ByteArrayOutputStream())), hints, 4);
+        // each stream is recorded by both the marshaller and the unmarshaller, so 8 streams fill the first update
+        // interval; the 90th percentile of those 16 samples is the 15th smallest, from the stream of 80
+        assertTrue("instance hint " + hints[0], hints[0] >= 80 && hints[0] < 90);
+        assertEquals(1, hints[1]);
+        // no update until another 16 samples are in
+        assertEquals(hints[0], hints[2]);
+        assertEquals(hints[1], hints[3]);
+        // the 90th percentile of 32 samples is the 29th smallest, from the stream of 150 rather than the largest of 160
+        assertEquals(hints[0] + 70, hints[4]);
+        assertEquals(1, hints[5]);
+    }
+
+    private static void graphSizeHints(final Marshaller marshaller, final int[] hints, final int offset) throws Exception {
+        final Field field = RiverMarshaller.class.getDeclaredField("graphSizeHistory");
+        field.setAccessible(true);
+        final Object history = field.get(marshaller);
+        final Method instanceHint = history.getClass().getDeclaredMethod("getInstanceHint");
+        instanceHint.setAccessible(true);
+        final Method classHint = history.getClass().getDeclaredMethod("getClassHint");
+        classHint.setAccessible(true);
+        hints[offset] = ((Integer) instanceHint.invoke(history)).intValue();
+        hints[offset + 1] = ((Integer) classHint.invoke(history)).intValue();
+    }
+
+    private static int instanceCacheSize(final Unmarshaller unmarshaller) throws Exception {
+        final Field field = RiverUnmarshaller.class.getDeclaredField("instanceCache");
+        field.setAccessible(true);
+        final Object table = field.get(unmarshaller);
+        final Method method = table.getClass().getDeclaredMethod("size");
+        method.setAccessible(true);
+        return ((Integer) method.invoke(table)).intValue();
+    }
+
+    @Test
+    public void testChunkedCollectionStreamFailure() throws Throwable {
+        final Object bad = new Object();
+        final List<Object> subjects = new ArrayList<Object>();
+        final MarshallingConfiguration[] writeConfiguration = new MarshallingConfiguration[1];
+        runReadWriteTest(new ReadWriteTest() {
+            public void configureRead(final MarshallingConfiguration configuration) throws Throwable {
+                configuration.setExceptionListener(new ExceptionListener() {
+                    public void handleMarshallingException(final Throwable problem, final Object subject) {
+                        subjects.add(subject);
+                    }
+
+                    public void handleUnmarshallingException(final Throwable problem, final Class<?> subjectClass) {
+                    }
+
+                    public void handleUnmarshallingException(final Throwable problem) {
+                    }
+                });
+                writeConfiguration[0] = configuration;
+            }
+
+            public void runWrite(final Marshaller marshaller) throws Throwable {
+                if (! (marshaller instanceof RiverMarshaller) || writeConfiguration[0].getVersion() < 5) {
+                    throw new SkipException("Test not relevant for " + marshaller);
+                }
+                try {
+                    marshaller.writeCollectionStream(Arrays.asList("first", bad).iterator());
+                    fail("Missing exception");
+                } catch (NotSerializableException e) {
+                    // expected
+                }
+                assertEquals(Collections.singletonList(bad), subjects);
+            }
+        });
+    }
+
     private static final class HashMapExternalizer implements Externalizer {
 
         private static final long serialVersionUID = 4923778660953773530L;
@@ -1417,6 +1925,157 @@ public final class SimpleMarshallerTests extends TestBase {
         });
     }
 
+    private static final class MarkingBitSetExternalizer implements Externalizer {
+
+        private static final long serialVersionUID = -2093744916735425917L;
+
+        public void writeExternal(final Object subject, final ObjectOutput output) throws IOException {
+            final byte[] bytes = ((BitSet) subject).toByteArray();
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        }
+
+        public Object createExternal(final Class<?> subjectType, final ObjectInput input) throws IOException, ClassNotFoundException {
+            final byte[] bytes = new byte[input.readInt()];
+            input.readFully(bytes);
+            final BitSet bitSet = BitSet.valueOf(bytes);
+            // shows that the externalizer, not the built-in bit set format, was used
+            bitSet.set(1000);
+            return bitSet;
+        }
+    }
+
+    @Test
+    public void testBitSetExternalizer() throws Throwable {
+        final BitSet bitSet = new BitSet();
+        bitSet.set(3);
+        bitSet.set(70);
+        runReadWriteTest(new ReadWriteTest() {
+            public void configure(final MarshallingConfiguration configuration) throws Throwable {
+                configuration.setClassExternalizerFactory(new ClassExternalizerFactory() {
+                    public Externalizer getExternalizer(final Class<?> type) {
+                        return type == BitSet.class ? new MarkingBitSetExternalizer() : null;
+                    }
+                });
+            }
+
+            public void runWrite(final Marshaller marshaller) throws Throwable {
+                if (! (marshaller instanceof RiverMarshaller)) {
+                    throw new SkipException("Test not relevant for " + marshaller);
+                }
+                marshaller.writeObject(bitSet);
+                marshaller.writeObject(bitSet);
+            }
+
+            public void runRead(final Unmarshaller unmarshaller) throws Throwable {
+                final BitSet bitSet2 = (BitSet) unmarshaller.readObject();
+                assertTrue(bitSet2.get(1000));
+                bitSet2.clear(1000);
+                assertEquals(bitSet, bitSet2);
+                assertSame(bitSet2, unmarshaller.readObject());
+                assertEOF(unmarshaller);
+            }
+        });
+    }
+
+    @Test
+    public void testPooledRoundTrip() throws Throwable {
+        final Marshaller probe = testMarshallerProvider.create(configuration.clone(), Marshalling.createByteOutput(new ByteArrayOutputStream()));
+        probe.finish();
+        if (! (probe instanceof RiverMarshaller)) {
+            throw new SkipException("Test not relevant for " + probe);
+        }
+        final RiverMarshallerFactory factory = new RiverMarshallerFactory();
+        final MarshallerPool marshallerPool = new MarshallerPool(factory, configuration, 1);
+        final UnmarshallerPool unmarshallerPool = new UnmarshallerPool(factory, configuration, 1);
+        final List<Object> list = new ArrayList<Object>(Arrays.asList("one", new Date(12345L), new TestA(), "one"));
+        // second use of each pooled instance starts from the buffer kept by the first finish()
+        final byte[][] streams = new byte[2][];
+        Marshaller firstMarshaller = null;
+        for (int i = 0; i < streams.length; i ++) {
+            final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            final Marshaller marshaller = marshallerPool.acquire();
+            if (firstMarshaller == null) {
+                firstMarshaller = marshaller;
+            } else {
+                assertSame(firstMarshaller, marshaller);
+            }
+            marshaller.start(Marshalling.createByteOutput(baos));
+            marshaller.writeObject(list);
+            marshaller.writeUTF("pooled");
+            marshaller.finish();
+            marshallerPool.release(marshaller);
+            streams[i] = baos.toByteArray();
+        }
+        assertTrue(Arrays.equals(streams[0], streams[1]));
+        Unmarshaller firstUnmarshaller = null;
+        for (byte[] stream : streams) {
+            final Unmarshaller unmarshaller = unmarshallerPool.acquire();
+            if (firstUnmarshaller == null) {
+                firstUnmarshaller = unmarshaller;
+            } else {
+                assertSame(firstUnmarshaller, unmarshaller);
+            }
+            unmarshaller.start(Marshalling.createByteInput(new ByteArrayInputStream(stream)));
+            final List<?> list2 = (List<?>) unmarshaller.readObject();
+            assertEquals(list.size(), list2.size());
+            assertEquals(list.get(0), list2.get(0));
+            assertEquals(list.get(1), list2.get(1));
+            assertTrue(list2.get(2) instanceof TestA);
+            assertSame(list2.get(0), list2.get(3));
+            assertEquals("pooled", unmarshaller.readUTF());
+            assertEOF(unmarshaller);
+            unmarshaller.finish();
+            unmarshallerPool.release(unmarshaller);
+        }
+    }
+
+    public static class PlainSerializable implements Serializable {
+
+        private static final long serialVersionUID = -3304417216713367532L;
+
+        int value;
+        String name;
+    }
+
+    public static class FinalizableSerializable extends PlainSerializable {
+
+        private static final long serialVersionUID = 6029458725541209571L;
+
+        @SuppressWarnings({ "deprecation" })
+        protected void finalize() throws Throwable {
+            super.finalize();
+        }
+    }
+
+    @Test
+    public void testFinalizableRoundTrip() throws Throwable {
+        final PlainSerializable plain = new PlainSerializable();
+        plain.value = 17;
+        plain.name = "plain";
+        final FinalizableSerializable finalizable = new FinalizableSerializable();
+        finalizable.value = 42;
+        finalizable.name = "finalizable";
+        runReadWriteTest(new ReadWriteTest() {
+            public void runWrite(final Marshaller marshaller) throws Throwable {
+                marshaller.writeObject(plain);
+                marshaller.writeObject(finalizable);
+            }
+
+            public void runRead(final Unmarshaller unmarshaller) throws Throwable {
+                final PlainSerializable plain2 = (PlainSerializable) unmarshaller.readObject();
+                assertSame(PlainSerializable.class, plain2.getClass());
+                assertEquals(17, plain2.value);
+                assertEquals("plain", plain2.name);
+                final PlainSerializable finalizable2 = (PlainSerializable) unmarshaller.readObject();
+                assertSame(FinalizableSerializable.class, finalizable2.getClass());
+                assertEquals(42, finalizable2.value);
+                assertEquals("finalizable", finalizable2.name);
+                assertEOF(unmarshaller);
+            }
+        });
+    }
+
     public static class TestA implements Serializable {
 
         private static final long serialVersionUID = 4788787450574491652L;
@@ -1614,6 +2273,44 @@ public final class SimpleMarshallerTests extends TestBase {
 
     }
 
+    @Test
+    public void testSortedBulkLoad() throws Throwable {
+        final TreeMap<Integer, Integer> tree = new TreeMap<Integer, Integer>(new CountingComp());
+        final TreeSet<Integer> set = new TreeSet<Integer>(new CountingComp());
+        for (int i = 0; i < 1000; i++) {
+            tree.put(Integer.valueOf(i), Integer.valueOf(i));
+            set.add(Integer.valueOf(i));
+        }
+        runReadWriteTest(new ReadWriteTest() {
+            public void runWrite(final Marshaller marshaller) throws Throwable {
+                marshaller.writeObject(tree);
+                marshaller.writeObject(set);
+            }
+
+            @SuppressWarnings({ "unchecked" })
+            public void runRead(final Unmarshaller unmarshaller) throws Throwable {
+                CountingComp.count.set(0);
+                final TreeMap<Integer, Integer> tree2 = (TreeMap<Integer, Integer>) unmarshaller.readObject();
+                final TreeSet<Integer> set2 = (TreeSet<Integer>) unmarshaller.readObject();
+                // sorted input is installed as-is, without asking the comparator
+                assertEquals(0, CountingComp.count.get());
+                assertEquals(tree, tree2);
+                assertEquals(set, set2);
+                assertEquals(tree.firstKey(), tree2.firstKey());
+                assertEquals(set.last(), set2.last());
+            }
+        });
+    }
+
+    public static class CountingComp implements Comparator<Integer>, Serializable {
+        static final AtomicInteger count = new AtomicInteger();
+
+        public int compare(Integer o1, Integer o2) {
+            count.incrementAndGet();
+            return o1.compareTo(o2);
+        }
+    }
+
     public interface Adder {
 
         int add(int amount);
@@ -2111,6 +2808,50 @@ public final class SimpleMarshallerTests extends TestBase {
         unmarshaller.finish();
     }
 
+    @Test
+    public void testSessionClasses() throws Throwable {
+        final TestSerializable t = new TestSerializable();
+        final MarshallingConfiguration config = configuration.clone();
+        config.setSessionClassLimit(64);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(10240);
+        final Marshaller marshaller = testMarshallerProvider.create(config.clone(), Marshalling.createByteOutput(baos));
+        if (marshaller instanceof ObjectOutputStreamMarshaller) {
+            throw new SkipException(marshaller + " doesn't support start()");
+        }
+        marshaller.writeObject(t);
+        marshaller.finish();
+        final byte[] first = baos.toByteArray();
+        final Unmarshaller unmarshaller = testUnmarshallerProvider.create(config.clone(), Marshalling.createByteInput(new ByteArrayInputStream(first)));
+        if (unmarshaller instanceof ObjectInputStreamUnmarshaller) {
+            throw new SkipException(unmarshaller + " doesn't support start()");
+        }
+        assertEquals(t, unmarshaller.readObject());
+        unmarshaller.finish();
+        for (int i = 0; i < 2; i ++) {
+            baos.reset();
+            marshaller.start(Marshalling.createByteOutput(baos));
+            marshaller.writeObject(t);
+            marshaller.writeObject(new TestSerializable());
+            marshaller.finish();
+            final byte[] next = baos.toByteArray();
+            unmarshaller.start(Marshalling.createByteInput(new ByteArrayInputStream(next)));
+            assertEquals(t, unmarshaller.readObject());
+            assertEquals(new TestSerializable(), unmarshaller.readObject());
+            assertEOF(unmarshaller);
+            unmarshaller.finish();
+        }
+        // a reset session must be accepted by the reader as a new one
+        marshaller.clearClassCache();
+        baos.reset();
+        marshaller.start(Marshalling.createByteOutput(baos));
+        marshaller.writeObject(t);
+        marshaller.finish();
+        assertEquals(baos.toByteArray(), first);
+        unmarshaller.start(Marshalling.createByteInput(new ByteArrayInputStream(first)));
+        assertEquals(t, unmarshaller.readObject());
+        unmarshaller.finish();
+    }
+
     static class TestStreamHeader implements StreamHeader {
 
         private byte B1 = (byte) 12;